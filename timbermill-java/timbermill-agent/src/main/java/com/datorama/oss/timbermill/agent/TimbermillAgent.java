@@ -0,0 +1,153 @@
+package com.datorama.oss.timbermill.agent;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datorama.oss.timbermill.pipe.EventOutputPipe;
+import com.datorama.oss.timbermill.pipe.TimbermillAgentOutputPipe;
+import com.datorama.oss.timbermill.pipe.TimbermillServerOutputPipeBuilder;
+import com.datorama.oss.timbermill.unit.Event;
+import com.datorama.oss.timbermill.unit.EventsWrapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/*
+ * Host local agent, accepts events from the host's processes over loopback and forwards them to the Timbermill server
+ * through a single pipe, so batching, compression, buffering and retries are shared by all of them.
+ * Each frame is a 4 bytes length followed by an EventsWrapper JSON, optionally gzipped.
+ */
+public class TimbermillAgent {
+
+	private static final Logger LOG = LoggerFactory.getLogger(TimbermillAgent.class);
+	private static final int MAX_FRAME_SIZE = 50 * 1024 * 1024;
+	private static final int GZIP_MAGIC_FIRST_BYTE = 0x1f;
+	private static final int GZIP_MAGIC_SECOND_BYTE = 0x8b;
+
+	private final ObjectMapper om = new ObjectMapper();
+	private final EventOutputPipe forwardPipe;
+	private final ServerSocket serverSocket;
+	private final ExecutorService connectionsExecutor;
+	private final AtomicLong receivedEvents = new AtomicLong(0);
+	private volatile boolean keepRunning = true;
+
+	public TimbermillAgent(int port, EventOutputPipe forwardPipe) throws IOException {
+		this.forwardPipe = forwardPipe;
+		this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		ThreadFactory namedThreadFactory = new ThreadFactoryBuilder().setNameFormat("timbermill-agent-connection-%d").setDaemon(true).build();
+		this.connectionsExecutor = Executors.newCachedThreadPool(namedThreadFactory);
+	}
+
+	public void start() {
+		Thread acceptThread = new Thread(this::acceptConnections, "timbermill-agent-acceptor");
+		acceptThread.start();
+		LOG.info("Timbermill agent is listening on {}", serverSocket.getLocalSocketAddress());
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	public long getReceivedEventsAmount() {
+		return receivedEvents.get();
+	}
+
+	public void close() {
+		keepRunning = false;
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			LOG.warn("Failed closing Timbermill agent socket", e);
+		}
+		connectionsExecutor.shutdownNow();
+		forwardPipe.close();
+	}
+
+	private void acceptConnections() {
+		while (keepRunning) {
+			try {
+				Socket socket = serverSocket.accept();
+				connectionsExecutor.execute(() -> handleConnection(socket));
+			} catch (SocketException e) {
+				if (keepRunning) {
+					LOG.error("Timbermill agent socket failed", e);
+				}
+				return;
+			} catch (Exception e) {
+				LOG.error("Failed accepting connection to Timbermill agent", e);
+			}
+		}
+	}
+
+	private void handleConnection(Socket socket) {
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+			while (keepRunning) {
+				int frameSize = input.readInt();
+				if (frameSize <= 0 || frameSize > MAX_FRAME_SIZE) {
+					LOG.error("Got invalid frame size {} from {}, closing connection", frameSize, socket.getRemoteSocketAddress());
+					return;
+				}
+				byte[] frame = new byte[frameSize];
+				input.readFully(frame);
+				forwardFrame(frame);
+			}
+		} catch (EOFException e) {
+			LOG.debug("Connection from {} was closed", socket.getRemoteSocketAddress());
+		} catch (IOException e) {
+			LOG.warn("Connection from {} failed", socket.getRemoteSocketAddress(), e);
+		}
+	}
+
+	private void forwardFrame(byte[] frame) {
+		try (InputStream frameInput = isGzipped(frame) ? new GZIPInputStream(new ByteArrayInputStream(frame)) : new ByteArrayInputStream(frame)) {
+			EventsWrapper eventsWrapper = om.readValue(frameInput, EventsWrapper.class);
+			List<Event> events = eventsWrapper.getEvents();
+			if (events != null) {
+				events.forEach(forwardPipe::send);
+				receivedEvents.addAndGet(events.size());
+			}
+		} catch (Exception e) {
+			LOG.error("Failed parsing events frame of {} bytes", frame.length, e);
+		}
+	}
+
+	private static boolean isGzipped(byte[] frame) {
+		return frame.length > 1 && (frame[0] & 0xff) == GZIP_MAGIC_FIRST_BYTE && (frame[1] & 0xff) == GZIP_MAGIC_SECOND_BYTE;
+	}
+
+	public static void main(String[] args) throws IOException {
+		String timbermillServer = System.getProperty("timbermill.url");
+		if (timbermillServer == null || timbermillServer.trim().isEmpty()) {
+			throw new RuntimeException("Must enclose the Timbermill server URL (-Dtimbermill.url)");
+		}
+		List<String> timbermillServers = Arrays.stream(timbermillServer.split(",")).map(String::trim).filter(url -> !url.isEmpty()).collect(Collectors.toList());
+		int port = Integer.getInteger("timbermill.agent.port", TimbermillAgentOutputPipe.DEFAULT_AGENT_PORT);
+
+		EventOutputPipe forwardPipe = new TimbermillServerOutputPipeBuilder().timbermillServerUrls(timbermillServers)
+				.maxBufferSize(Integer.getInteger("timbermill.buffer.max-size", 500000000))
+				.numOfThreads(Integer.getInteger("timbermill.agent.sender-threads", 2))
+				.adaptiveBatching(Boolean.parseBoolean(System.getProperty("timbermill.batch.adaptive", "true")))
+				.build();
+		TimbermillAgent agent = new TimbermillAgent(port, forwardPipe);
+		Runtime.getRuntime().addShutdownHook(new Thread(agent::close));
+		agent.start();
+	}
+}
@@ -0,0 +1,87 @@
+package com.datorama.oss.timbermill.agent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datorama.oss.timbermill.pipe.EventOutputPipe;
+import com.datorama.oss.timbermill.pipe.TimbermillAgentOutputPipe;
+import com.datorama.oss.timbermill.pipe.TimbermillAgentOutputPipeBuilder;
+import com.datorama.oss.timbermill.unit.Event;
+import com.datorama.oss.timbermill.unit.LogParams;
+import com.datorama.oss.timbermill.unit.StartEvent;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+
+public class TimbermillAgentTest {
+
+	private final List<Event> forwardedEvents = new CopyOnWriteArrayList<>();
+	private TimbermillAgent agent;
+
+	@Before
+	public void setUp() throws IOException {
+		agent = new TimbermillAgent(0, new EventOutputPipe() {
+			@Override public void send(Event e) {
+				forwardedEvents.add(e);
+			}
+
+			@Override public int getCurrentBufferSize() {
+				return 0;
+			}
+
+			@Override public void close() {
+			}
+		});
+		agent.start();
+	}
+
+	@After
+	public void tearDown() {
+		agent.close();
+	}
+
+	@Test
+	public void agentOutputPipeTest() {
+		TimbermillAgentOutputPipe pipe = new TimbermillAgentOutputPipeBuilder().agentPort(agent.getPort()).build();
+		for (int i = 0; i < 10; i++) {
+			pipe.send(new StartEvent("id" + i, "agent_test", LogParams.create(), null));
+		}
+		pipe.close();
+
+		await().atMost(10, TimeUnit.SECONDS).until(() -> forwardedEvents.size() == 10);
+		List<String> taskIds = forwardedEvents.stream().map(Event::getTaskId).collect(Collectors.toList());
+		for (int i = 0; i < 10; i++) {
+			assertEquals("id" + i, taskIds.get(i));
+		}
+	}
+
+	@Test
+	public void gzippedFrameTest() throws IOException {
+		String eventsWrapper = "{\"@type\": \"EventsWrapper\", \"events\": [{\"@type\": \"SpotEvent\", \"taskId\": \"spot_id\", \"name\": \"agent_spot\", \"time\": \"2021-01-01T00:00:00.000000Z\"}]}";
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzipOutput = new GZIPOutputStream(gzipped)) {
+			gzipOutput.write(eventsWrapper.getBytes("UTF-8"));
+		}
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), agent.getPort());
+				DataOutputStream output = new DataOutputStream(socket.getOutputStream())) {
+			output.writeInt(gzipped.size());
+			output.write(gzipped.toByteArray());
+			output.flush();
+			await().atMost(10, TimeUnit.SECONDS).until(() -> forwardedEvents.size() == 1);
+		}
+		assertEquals("spot_id", forwardedEvents.get(0).getTaskId());
+		assertEquals("agent_spot", forwardedEvents.get(0).getName());
+	}
+}
@@ -14,6 +14,8 @@ public class ClientHeartbeater {
 	public static final String AVG_SUBMIT_DURATION = "avgSubmitDuration";
 	public static final String MAX_SUBMIT_DURATION = "maxSubmitDuration";
 	public static final String OUTPUT_BUFFER_SIZE = "outputBufferSize";
+	public static final String BATCH_SIZE = "batchSize";
+	public static final String BATCH_LINGER_MILLIS = "batchLingerMillis";
 
 	private final StatisticsCollectorOutputPipe statsCollector;
 
@@ -32,6 +34,7 @@ public class ClientHeartbeater {
 				statsCollector.initCounters();
 				if (eop != null) {
 					logParams.metric(OUTPUT_BUFFER_SIZE, eop.getCurrentBufferSize());
+					logParams.metric(eop.getHeartbeatMetrics());
 				}
 				EventLogger.get().spotEvent(null, Constants.HEARTBEAT_TASK, null, logParams, TaskStatus.SUCCESS, null);
 				try {
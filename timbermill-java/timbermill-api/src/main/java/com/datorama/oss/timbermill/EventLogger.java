@@ -32,6 +32,7 @@ final class EventLogger {
 	private static ThreadLocal<EventLogger> threadInstance = ThreadLocal.withInitial(() -> new EventLogger(new BlackHolePipe()));
 	private static boolean isBootstrapped;
 	private static String env;
+	private static EventOutputPipe outputPipe;
 
 	/**
 	 * Instance fields
@@ -60,6 +61,7 @@ final class EventLogger {
 				}
 				EventLogger.staticParams.putAll(staticParams);
 
+				outputPipe = statsCollector;
 				threadInstance = ThreadLocal.withInitial(() -> new EventLogger(statsCollector));
 			}
 		} catch (Throwable t){
@@ -69,6 +71,13 @@ final class EventLogger {
 
 	static void exit(){
 		isBootstrapped = false;
+		if (outputPipe != null) {
+			try {
+				outputPipe.flush();
+			} catch (Throwable t) {
+				LOG.error("Was unable to flush Timbermill events on exit", t);
+			}
+		}
 	}
 
 	static EventLogger get() {
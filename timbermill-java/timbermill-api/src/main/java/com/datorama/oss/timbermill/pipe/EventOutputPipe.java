@@ -1,5 +1,8 @@
 package com.datorama.oss.timbermill.pipe;
 
+import java.util.Collections;
+import java.util.Map;
+
 import com.datorama.oss.timbermill.unit.Event;
 
 public interface EventOutputPipe {
@@ -9,4 +12,13 @@ public interface EventOutputPipe {
     int getCurrentBufferSize();
 
     void close();
+
+    // Publishes any events the pipe holds before its own buffer (e.g. per-thread batches)
+    default void flush() {
+    }
+
+    // Pipe specific metrics reported in the client heartbeat
+    default Map<String, Number> getHeartbeatMetrics() {
+        return Collections.emptyMap();
+    }
 }
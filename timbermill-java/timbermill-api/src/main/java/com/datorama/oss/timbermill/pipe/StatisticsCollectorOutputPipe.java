@@ -1,5 +1,6 @@
 package com.datorama.oss.timbermill.pipe;
 
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.datorama.oss.timbermill.unit.Event;
@@ -46,6 +47,14 @@ public class StatisticsCollectorOutputPipe implements EventOutputPipe {
 		return delegate.getCurrentBufferSize();
 	}
 
+	@Override public Map<String, Number> getHeartbeatMetrics() {
+		return delegate.getHeartbeatMetrics();
+	}
+
+	@Override public void flush() {
+		delegate.flush();
+	}
+
 	@Override public void close() {
 		delegate.close();
 	}
@@ -1,5 +1,8 @@
 package com.datorama.oss.timbermill;
 
+import com.datorama.oss.timbermill.pipe.EventOutputPipe;
+import com.datorama.oss.timbermill.pipe.TimbermillAgentOutputPipe;
+import com.datorama.oss.timbermill.pipe.TimbermillAgentOutputPipeBuilder;
 import com.datorama.oss.timbermill.pipe.TimbermillServerOutputPipeBuilder;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -11,9 +14,12 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Service("timbermill")
 public class TimbermillBootstraperService {
@@ -38,6 +44,21 @@ public class TimbermillBootstraperService {
 	@Value("${timbermill.batch.max-seconds-interval:3}")
 	private int maxSecondsBeforeBatchTimeout;
 
+	@Value("${timbermill.batch.adaptive:false}")
+	private boolean adaptiveBatching;
+
+	@Value("${timbermill.batch.min-size:65536}")
+	private int minEventsBatchSize;
+
+	@Value("${timbermill.batch.thread-local-size:0}")
+	private int threadLocalBatchSize;
+
+	@Value("${timbermill.agent.enabled:false}")
+	private boolean agentEnabled;
+
+	@Value("${timbermill.agent.port:" + TimbermillAgentOutputPipe.DEFAULT_AGENT_PORT + "}")
+	private int agentPort;
+
 	@Value("${timbermill.env:default}")
 	private String timbermillEnv;
 
@@ -46,19 +67,24 @@ public class TimbermillBootstraperService {
 	@PostConstruct
 	public void init() {
 		if (timberLogEnabled) {
-			if (!StringUtils.isEmpty(timbermillServer)) {
+			if (agentEnabled) {
+				LOG.info(String.format("Bootstrapping TimberLog v2 through local agent on port %d; hostType=%s", agentPort, hostType));
+				EventOutputPipe agentPipe = new TimbermillAgentOutputPipeBuilder().agentPort(agentPort).build();
+				TimberLogger.bootstrap(agentPipe, getBootstrapParams(), timbermillEnv);
+				TimberLogger.spot("server_startup");
+			}
+			else if (!StringUtils.isEmpty(timbermillServer)) {
 				LOG.info(String.format("Bootstrapping TimberLog v2; hostType=%s", hostType));
-				Map<String, String> bootstrapParams = new HashMap<>();
-				bootstrapParams.put("host", getHostName());
-				bootstrapParams.put("jvm", getJvmUuid());
-				bootstrapParams.put("hostType", hostType);
-
-				TimbermillServerOutputPipeBuilder builder = new TimbermillServerOutputPipeBuilder().timbermillServerUrl(timbermillServer);
+				List<String> timbermillServers = Arrays.stream(timbermillServer.split(",")).map(String::trim).filter(url -> !url.isEmpty()).collect(Collectors.toList());
+				TimbermillServerOutputPipeBuilder builder = new TimbermillServerOutputPipeBuilder().timbermillServerUrls(timbermillServers);
 				builder.maxEventsBatchSize(maxEventsBatchSize);
 				builder.maxSecondsBeforeBatchTimeout(maxSecondsBeforeBatchTimeout);
+				builder.adaptiveBatching(adaptiveBatching);
+				builder.minEventsBatchSize(minEventsBatchSize);
 				builder.maxBufferSize(maxBufferSize);
+				builder.threadLocalBatchSize(threadLocalBatchSize);
 
-				TimberLogger.bootstrap(builder.build(), bootstrapParams, timbermillEnv);
+				TimberLogger.bootstrap(builder.build(), getBootstrapParams(), timbermillEnv);
 				TimberLogger.spot("server_startup");
 			}
 			else {
@@ -70,6 +96,14 @@ public class TimbermillBootstraperService {
 		}
 	}
 
+	private Map<String, String> getBootstrapParams() {
+		Map<String, String> bootstrapParams = new HashMap<>();
+		bootstrapParams.put("host", getHostName());
+		bootstrapParams.put("jvm", getJvmUuid());
+		bootstrapParams.put("hostType", hostType);
+		return bootstrapParams;
+	}
+
 	private static String getHostName() {
 		try {
 			return InetAddress.getLocalHost().getHostName();
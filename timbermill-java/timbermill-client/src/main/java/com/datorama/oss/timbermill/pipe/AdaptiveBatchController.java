@@ -0,0 +1,72 @@
+package com.datorama.oss.timbermill.pipe;
+
+/*
+ * Tunes the batch size and the time a sender waits for a batch to fill (linger) within the configured bounds.
+ * The batch size shrinks when sends fail or are slower than the target latency and grows while full batches are sent fast.
+ * The linger follows the events arrival rate, when a worthwhile batch can't be collected in time events are sent right away.
+ */
+class AdaptiveBatchController {
+
+	private static final double GROWTH_FACTOR = 1.25;
+	private static final double SLOW_SEND_FACTOR = 0.8;
+	private static final double FAILED_SEND_FACTOR = 0.5;
+	private static final double ARRIVAL_RATE_SMOOTHING = 0.3;
+
+	private final int minBatchBytes;
+	private final int maxBatchBytes;
+	private final long minLingerMillis;
+	private final long maxLingerMillis;
+	private final long targetSendLatencyMillis;
+
+	private volatile int batchBytes;
+	private volatile long lingerMillis;
+	private double arrivalBytesPerMilli = -1;
+
+	AdaptiveBatchController(int minBatchBytes, int maxBatchBytes, long minLingerMillis, long maxLingerMillis, long targetSendLatencyMillis) {
+		if (minBatchBytes > maxBatchBytes || minLingerMillis > maxLingerMillis) {
+			throw new RuntimeException("Minimum batch size and timeout should not be larger than their maximum");
+		}
+		this.minBatchBytes = minBatchBytes;
+		this.maxBatchBytes = maxBatchBytes;
+		this.minLingerMillis = minLingerMillis;
+		this.maxLingerMillis = maxLingerMillis;
+		this.targetSendLatencyMillis = targetSendLatencyMillis;
+		this.batchBytes = maxBatchBytes;
+		this.lingerMillis = maxLingerMillis;
+	}
+
+	// Fixed batch size and linger, used when adaptive batching is disabled
+	static AdaptiveBatchController fixed(int batchBytes, long lingerMillis) {
+		return new AdaptiveBatchController(batchBytes, batchBytes, lingerMillis, lingerMillis, Long.MAX_VALUE);
+	}
+
+	int getBatchBytes() {
+		return batchBytes;
+	}
+
+	long getLingerMillis() {
+		return lingerMillis;
+	}
+
+	synchronized void onBatchCollected(int collectedBytes, long collectMillis) {
+		double currentRate = (double) collectedBytes / Math.max(collectMillis, 1);
+		arrivalBytesPerMilli = arrivalBytesPerMilli < 0 ? currentRate : ARRIVAL_RATE_SMOOTHING * currentRate + (1 - ARRIVAL_RATE_SMOOTHING) * arrivalBytesPerMilli;
+
+		double millisToFillMinBatch = arrivalBytesPerMilli > 0 ? minBatchBytes / arrivalBytesPerMilli : Double.MAX_VALUE;
+		if (millisToFillMinBatch > maxLingerMillis) {
+			lingerMillis = minLingerMillis; // Waiting won't produce a real batch, don't hold the events
+		} else {
+			lingerMillis = Math.max(minLingerMillis, (long) millisToFillMinBatch);
+		}
+	}
+
+	synchronized void onSendCompleted(int sentBytes, long latencyMillis, boolean success) {
+		if (!success) {
+			batchBytes = Math.max(minBatchBytes, (int) (batchBytes * FAILED_SEND_FACTOR));
+		} else if (latencyMillis > targetSendLatencyMillis) {
+			batchBytes = Math.max(minBatchBytes, (int) (batchBytes * SLOW_SEND_FACTOR));
+		} else if (latencyMillis < targetSendLatencyMillis / 2 && sentBytes >= batchBytes) {
+			batchBytes = (int) Math.min(maxBatchBytes, (long) (batchBytes * GROWTH_FACTOR));
+		}
+	}
+}
@@ -31,6 +31,22 @@ class SizedBoundEventsQueue extends LinkedBlockingQueue<Event> {
 		}
 	}
 
+	// Hands off a whole batch under a single lock acquisition, returns the amount of events that didn't fit
+	int offerAll(List<Event> events) {
+		int rejected = 0;
+		synchronized (this) {
+			for (Event e : events) {
+				int eventSize = e.estimatedSize();
+				if (size.get() + eventSize <= maxSize && super.offer(e)) {
+					size.addAndGet(eventSize);
+				} else {
+					rejected++;
+				}
+			}
+		}
+		return rejected;
+	}
+
 	@Override
 	public Event poll() {
 		synchronized (this) {
@@ -43,11 +59,15 @@ class SizedBoundEventsQueue extends LinkedBlockingQueue<Event> {
 	}
 
 	List<Event> getEventsOfSize(int maxEventsBatchSize) {
+		return getEventsOfSize(maxEventsBatchSize, maxSecondsBeforeBatchTimeout * 1000);
+	}
+
+	List<Event> getEventsOfSize(int maxEventsBatchSize, long maxMillisBeforeBatchTimeout) {
 		List<Event> eventsToSend = new ArrayList<>();
 		try {
 			int currentBatchSize = addEventFromBufferToList(eventsToSend);
 			long startBatchTime = System.currentTimeMillis();
-			while(currentBatchSize <= maxEventsBatchSize && !isExceededMaxTimeToWait(startBatchTime)) {
+			while(currentBatchSize <= maxEventsBatchSize && !isExceededMaxTimeToWait(startBatchTime, maxMillisBeforeBatchTimeout)) {
 				currentBatchSize  += addEventFromBufferToList(eventsToSend);
 			}
 		} catch (InterruptedException e) {
@@ -68,8 +88,8 @@ class SizedBoundEventsQueue extends LinkedBlockingQueue<Event> {
 		return event.estimatedSize();
 	}
 
-	private boolean isExceededMaxTimeToWait(long startBatchTime) {
-		return System.currentTimeMillis() - startBatchTime > maxSecondsBeforeBatchTimeout * 1000;
+	private boolean isExceededMaxTimeToWait(long startBatchTime, long maxMillisBeforeBatchTimeout) {
+		return System.currentTimeMillis() - startBatchTime > maxMillisBeforeBatchTimeout;
 	}
 
 
@@ -0,0 +1,128 @@
+package com.datorama.oss.timbermill.pipe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datorama.oss.timbermill.unit.Event;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/*
+ * Collects events in small per-thread batches and publishes them to the shared buffer in one hand-off,
+ * either when a batch is full or on the periodic flush tick.
+ */
+class ThreadLocalEventsBatcher {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ThreadLocalEventsBatcher.class);
+
+	private final SizedBoundEventsQueue buffer;
+	private final int batchSize;
+	private final Set<ThreadBatch> batches = ConcurrentHashMap.newKeySet();
+	private final ThreadLocal<ThreadBatch> threadBatch = ThreadLocal.withInitial(this::registerCurrentThread);
+	private final ScheduledExecutorService flushExecutor;
+
+	ThreadLocalEventsBatcher(SizedBoundEventsQueue buffer, int batchSize, long flushIntervalMillis) {
+		this.buffer = buffer;
+		this.batchSize = batchSize;
+		ThreadFactory namedThreadFactory = new ThreadFactoryBuilder().setNameFormat("timbermill-batch-flusher-%d").setDaemon(true).build();
+		flushExecutor = Executors.newSingleThreadScheduledExecutor(namedThreadFactory);
+		flushExecutor.scheduleWithFixedDelay(this::flushAll, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	void add(Event e) {
+		List<Event> fullBatch = threadBatch.get().add(e);
+		if (fullBatch != null) {
+			publish(fullBatch);
+		}
+	}
+
+	// Flushes all threads' batches, batches of threads that have died are flushed one last time and dropped
+	void flushAll() {
+		try {
+			for (ThreadBatch batch : batches) {
+				List<Event> events = batch.drain();
+				if (!events.isEmpty()) {
+					publish(events);
+				}
+				if (!batch.isOwnerAlive()) {
+					batches.remove(batch);
+				}
+			}
+		} catch (Exception e) {
+			LOG.error("Error flushing thread local events batches", e);
+		}
+	}
+
+	void close() {
+		flushExecutor.shutdown();
+		flushAll();
+	}
+
+	int getPendingEventsAmount() {
+		return batches.stream().mapToInt(ThreadBatch::size).sum();
+	}
+
+	private ThreadBatch registerCurrentThread() {
+		ThreadBatch batch = new ThreadBatch(Thread.currentThread(), batchSize);
+		batches.add(batch);
+		return batch;
+	}
+
+	private void publish(List<Event> events) {
+		int rejected = buffer.offerAll(events);
+		if (rejected > 0) {
+			LOG.warn("{} events were removed from the queue due to insufficient space", rejected);
+		}
+	}
+
+	private static class ThreadBatch {
+		private final Thread owner;
+		private final int batchSize;
+		private List<Event> events;
+
+		ThreadBatch(Thread owner, int batchSize) {
+			this.owner = owner;
+			this.batchSize = batchSize;
+			this.events = new ArrayList<>(batchSize);
+		}
+
+		// Only contended when the flusher thread drains the batch, returns the batch once it is full
+		synchronized List<Event> add(Event e) {
+			events.add(e);
+			if (events.size() >= batchSize) {
+				return swap();
+			}
+			return null;
+		}
+
+		synchronized List<Event> drain() {
+			if (events.isEmpty()) {
+				return Collections.emptyList();
+			}
+			return swap();
+		}
+
+		synchronized int size() {
+			return events.size();
+		}
+
+		boolean isOwnerAlive() {
+			return owner.isAlive();
+		}
+
+		private List<Event> swap() {
+			List<Event> ret = events;
+			events = new ArrayList<>(batchSize);
+			return ret;
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package com.datorama.oss.timbermill.pipe;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datorama.oss.timbermill.unit.Event;
+import com.datorama.oss.timbermill.unit.EventsWrapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * Writes events to the Timbermill agent running on the local host, which batches, compresses and retries on behalf of all the host's processes.
+ * Events are written as frames of a 4 bytes length followed by an EventsWrapper JSON, the same body the Timbermill server accepts.
+ */
+public class TimbermillAgentOutputPipe implements EventOutputPipe {
+
+	public static final int DEFAULT_AGENT_PORT = 8485;
+
+	private static final Logger LOG = LoggerFactory.getLogger(TimbermillAgentOutputPipe.class);
+	private static final int CONNECT_TIMEOUT = 1000;
+	private static final long RECONNECT_BACKOFF = 1000;
+
+	private final ObjectMapper om = new ObjectMapper();
+	private final InetSocketAddress agentAddress;
+	private final SizedBoundEventsQueue buffer;
+	private final int maxEventsBatchSize;
+	private final long maxMillisBeforeBatchTimeout;
+	private final Thread writerThread;
+	private volatile boolean keepRunning = true;
+	private Socket socket;
+	private DataOutputStream socketOutput;
+
+	TimbermillAgentOutputPipe(TimbermillAgentOutputPipeBuilder builder) {
+		agentAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), builder.agentPort);
+		buffer = new SizedBoundEventsQueue(builder.maxBufferSize, 0);
+		maxEventsBatchSize = builder.maxEventsBatchSize;
+		maxMillisBeforeBatchTimeout = builder.maxMillisBeforeBatchTimeout;
+
+		writerThread = new Thread(this::writeEvents, "timbermill-agent-writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+	}
+
+	private void writeEvents() {
+		LOG.info("Starting Timbermill agent writer thread");
+		while (keepRunning || !buffer.isEmpty()) {
+			List<Event> eventsToSend = buffer.getEventsOfSize(maxEventsBatchSize, maxMillisBeforeBatchTimeout);
+			if (!eventsToSend.isEmpty()) {
+				writeFrame(eventsToSend);
+			}
+		}
+		closeSocket();
+	}
+
+	private void writeFrame(List<Event> events) {
+		byte[] frame;
+		try {
+			frame = om.writeValueAsBytes(new EventsWrapper(events));
+		} catch (IOException e) {
+			LOG.error("Failed serializing {} events for the Timbermill agent", events.size(), e);
+			return;
+		}
+		// A broken connection is re-established once, if the agent is down the frame is dropped
+		for (int tryNum = 1; tryNum <= 2; tryNum++) {
+			try {
+				if (socket == null) {
+					connect();
+				}
+				socketOutput.writeInt(frame.length);
+				socketOutput.write(frame);
+				socketOutput.flush();
+				return;
+			} catch (IOException e) {
+				LOG.warn("Failed writing to Timbermill agent at {}, Attempt: {}/2", agentAddress, tryNum, e);
+				closeSocket();
+			}
+		}
+		LOG.error("{} events were dropped, Timbermill agent at {} is unavailable", events.size(), agentAddress);
+		try {
+			Thread.sleep(RECONNECT_BACKOFF);
+		} catch (InterruptedException ignored) {
+		}
+	}
+
+	private void connect() throws IOException {
+		Socket newSocket = new Socket();
+		newSocket.setTcpNoDelay(true);
+		newSocket.connect(agentAddress, CONNECT_TIMEOUT);
+		socket = newSocket;
+		socketOutput = new DataOutputStream(new BufferedOutputStream(newSocket.getOutputStream()));
+	}
+
+	private void closeSocket() {
+		if (socket != null) {
+			try {
+				socket.close();
+			} catch (IOException ignored) {
+			}
+			socket = null;
+			socketOutput = null;
+		}
+	}
+
+	@Override
+	public void send(Event e) {
+		if (!buffer.offer(e)) {
+			LOG.warn("Event {} was removed from the queue due to insufficient space", e.getTaskId());
+		}
+	}
+
+	@Override
+	public int getCurrentBufferSize() {
+		return buffer.size();
+	}
+
+	@Override
+	public void close() {
+		if (!keepRunning) {
+			return;
+		}
+		LOG.info("Gracefully shutting down Timbermill agent output pipe.");
+		keepRunning = false;
+		try {
+			writerThread.join(5000);
+		} catch (InterruptedException ignored) {
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package com.datorama.oss.timbermill.pipe;
+
+public class TimbermillAgentOutputPipeBuilder {
+	int agentPort = TimbermillAgentOutputPipe.DEFAULT_AGENT_PORT;
+	int maxEventsBatchSize = 65536; // 64KB
+	long maxMillisBeforeBatchTimeout = 100;
+	int maxBufferSize = 200000;
+
+	public TimbermillAgentOutputPipeBuilder agentPort(int agentPort) {
+		this.agentPort = agentPort;
+		return this;
+	}
+
+	public TimbermillAgentOutputPipeBuilder maxEventsBatchSize(int maxEventsBatchSize) {
+		this.maxEventsBatchSize = maxEventsBatchSize;
+		return this;
+	}
+
+	public TimbermillAgentOutputPipeBuilder maxMillisBeforeBatchTimeout(long maxMillisBeforeBatchTimeout) {
+		this.maxMillisBeforeBatchTimeout = maxMillisBeforeBatchTimeout;
+		return this;
+	}
+
+	public TimbermillAgentOutputPipeBuilder maxBufferSize(int maxBufferSize) {
+		this.maxBufferSize = maxBufferSize;
+		return this;
+	}
+
+	public TimbermillAgentOutputPipe build() {
+		return new TimbermillAgentOutputPipe(this);
+	}
+
+}
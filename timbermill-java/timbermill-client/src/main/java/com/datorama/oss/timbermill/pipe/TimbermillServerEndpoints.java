@@ -0,0 +1,151 @@
+package com.datorama.oss.timbermill.pipe;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpHost;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/*
+ * Routes requests to the Timbermill server endpoint with the least outstanding requests.
+ * Endpoints that fail are ejected for a while and re-admitted by the health checker once they answer again.
+ */
+class TimbermillServerEndpoints {
+
+	private static final Logger LOG = LoggerFactory.getLogger(TimbermillServerEndpoints.class);
+	private static final int HEALTH_CHECK_TIMEOUT = 5000;
+
+	private final List<Endpoint> endpoints = new ArrayList<>();
+	private final long ejectionMillis;
+	private final ScheduledExecutorService healthCheckExecutor;
+
+	TimbermillServerEndpoints(Collection<String> serverUrls, String healthCheckPath, long ejectionSeconds, long healthCheckIntervalSeconds) {
+		if (serverUrls == null || serverUrls.isEmpty()) {
+			throw new RuntimeException("Must enclose the Timbermill server URL");
+		}
+		for (String serverUrl : serverUrls) {
+			endpoints.add(new Endpoint(serverUrl, healthCheckPath));
+		}
+		this.ejectionMillis = TimeUnit.SECONDS.toMillis(ejectionSeconds);
+
+		if (endpoints.size() > 1 && healthCheckIntervalSeconds > 0) {
+			ThreadFactory namedThreadFactory = new ThreadFactoryBuilder().setNameFormat("timbermill-health-check-%d").setDaemon(true).build();
+			healthCheckExecutor = Executors.newSingleThreadScheduledExecutor(namedThreadFactory);
+			healthCheckExecutor.scheduleWithFixedDelay(this::checkEjectedEndpoints, healthCheckIntervalSeconds, healthCheckIntervalSeconds, TimeUnit.SECONDS);
+		} else {
+			healthCheckExecutor = null;
+		}
+	}
+
+	// Returns the healthy endpoint with the least outstanding requests, if all are ejected the one that was ejected first is used
+	Endpoint acquire() {
+		long now = System.currentTimeMillis();
+		Endpoint selected = null;
+		for (Endpoint endpoint : endpoints) {
+			if (!endpoint.isEjected(now) && (selected == null || endpoint.outstanding.get() < selected.outstanding.get())) {
+				selected = endpoint;
+			}
+		}
+		if (selected == null) {
+			for (Endpoint endpoint : endpoints) {
+				if (selected == null || endpoint.ejectedUntil < selected.ejectedUntil) {
+					selected = endpoint;
+				}
+			}
+		}
+		selected.outstanding.incrementAndGet();
+		return selected;
+	}
+
+	void release(Endpoint endpoint, boolean success) {
+		endpoint.outstanding.decrementAndGet();
+		if (success) {
+			endpoint.ejectedUntil = 0;
+		} else if (endpoints.size() > 1) {
+			LOG.warn("Ejecting Timbermill server endpoint {} for {} seconds", endpoint, TimeUnit.MILLISECONDS.toSeconds(ejectionMillis));
+			endpoint.ejectedUntil = System.currentTimeMillis() + ejectionMillis;
+		}
+	}
+
+	// True when a failed request can be retried right away on another, non ejected, endpoint
+	boolean canFailOver() {
+		long now = System.currentTimeMillis();
+		return endpoints.size() > 1 && endpoints.stream().anyMatch(endpoint -> !endpoint.isEjected(now));
+	}
+
+	void close() {
+		if (healthCheckExecutor != null) {
+			healthCheckExecutor.shutdownNow();
+		}
+	}
+
+	private void checkEjectedEndpoints() {
+		long now = System.currentTimeMillis();
+		for (Endpoint endpoint : endpoints) {
+			if (endpoint.isEjected(now) && isHealthy(endpoint)) {
+				LOG.info("Timbermill server endpoint {} is healthy again", endpoint);
+				endpoint.ejectedUntil = 0;
+			}
+		}
+	}
+
+	private boolean isHealthy(Endpoint endpoint) {
+		HttpURLConnection httpCon = null;
+		try {
+			httpCon = (HttpURLConnection) endpoint.healthUrl.openConnection();
+			httpCon.setRequestMethod("GET");
+			httpCon.setConnectTimeout(HEALTH_CHECK_TIMEOUT);
+			httpCon.setReadTimeout(HEALTH_CHECK_TIMEOUT);
+			return httpCon.getResponseCode() == 200;
+		} catch (IOException e) {
+			LOG.debug("Health check for Timbermill server endpoint {} failed", endpoint, e);
+			return false;
+		} finally {
+			if (httpCon != null) {
+				httpCon.disconnect();
+			}
+		}
+	}
+
+	static class Endpoint {
+		private final URL eventsUrl;
+		private final URL healthUrl;
+		private final AtomicInteger outstanding = new AtomicInteger(0);
+		private volatile long ejectedUntil = 0;
+
+		Endpoint(String serverUrl, String healthCheckPath) {
+			try {
+				HttpHost httpHost = HttpHost.create(serverUrl);
+				eventsUrl = new URL(httpHost.toURI() + "/events");
+				healthUrl = new URL(httpHost.toURI() + healthCheckPath);
+			} catch (MalformedURLException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		URL getEventsUrl() {
+			return eventsUrl;
+		}
+
+		private boolean isEjected(long now) {
+			return ejectedUntil > now;
+		}
+
+		@Override public String toString() {
+			return eventsUrl.toString();
+		}
+	}
+}
@@ -3,19 +3,20 @@ package com.datorama.oss.timbermill.pipe;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPOutputStream;
 
-import org.apache.http.HttpHost;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.datorama.oss.timbermill.ClientHeartbeater;
 import com.datorama.oss.timbermill.unit.Event;
 import com.datorama.oss.timbermill.unit.EventsWrapper;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -28,8 +29,10 @@ public class TimbermillServerOutputPipe implements EventOutputPipe {
     private static final int MAX_RETRY = 5;
     private static final Logger LOG = LoggerFactory.getLogger(TimbermillServerOutputPipe.class);
     private static volatile boolean keepRunning = true;
-    private URL timbermillServerUrl;
+    private TimbermillServerEndpoints endpoints;
     private SizedBoundEventsQueue buffer;
+    private ThreadLocalEventsBatcher threadLocalBatcher;
+    private AdaptiveBatchController batchController;
     private ExecutorService executorService;
     private boolean sendGzippedRequest;
 
@@ -38,25 +41,31 @@ public class TimbermillServerOutputPipe implements EventOutputPipe {
 
     TimbermillServerOutputPipe(TimbermillServerOutputPipeBuilder builder){
         keepRunning = true;
-        if (builder.timbermillServerUrl == null){
-            throw new RuntimeException("Must enclose the Timbermill server URL");
+        endpoints = new TimbermillServerEndpoints(builder.timbermillServerUrls, builder.healthCheckPath, builder.endpointEjectionSeconds, builder.healthCheckIntervalSeconds);
+        buffer = new SizedBoundEventsQueue(builder.maxBufferSize, builder.maxSecondsBeforeBatchTimeout);
+        if (builder.threadLocalBatchSize > 1) {
+            if (builder.threadLocalFlushIntervalMillis < 1) {
+                throw new RuntimeException("Thread local flush interval should be larger than 0");
+            }
+            threadLocalBatcher = new ThreadLocalEventsBatcher(buffer, builder.threadLocalBatchSize, builder.threadLocalFlushIntervalMillis);
         }
-        try {
-            HttpHost httpHost = HttpHost.create(builder.timbermillServerUrl);
-            timbermillServerUrl = new URL(httpHost.toURI() + "/events");
-        } catch (MalformedURLException e) {
-            throw new RuntimeException(e);
+        long maxMillisBeforeBatchTimeout = TimeUnit.SECONDS.toMillis(builder.maxSecondsBeforeBatchTimeout);
+        if (builder.adaptiveBatching) {
+            batchController = new AdaptiveBatchController(builder.minEventsBatchSize, builder.maxEventsBatchSize, builder.minMillisBeforeBatchTimeout, maxMillisBeforeBatchTimeout,
+                    builder.targetSendLatencyMillis);
+        } else {
+            batchController = AdaptiveBatchController.fixed(builder.maxEventsBatchSize, maxMillisBeforeBatchTimeout);
         }
-        buffer = new SizedBoundEventsQueue(builder.maxBufferSize, builder.maxSecondsBeforeBatchTimeout);
 
         ThreadFactory namedThreadFactory = new ThreadFactoryBuilder().setNameFormat("timbermill-sender-%d").build();
 		this.executorService = Executors.newFixedThreadPool(builder.numOfThreads, namedThreadFactory);
-        executeEventsSenders(builder.maxEventsBatchSize, builder.numOfThreads);
+        executeEventsSenders(builder.numOfThreads);
         sendGzippedRequest = builder.sendGzippedRequest;
 
         // shutdown hook
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
         	LOG.info("Shutting down timbermill-senders executor service");
+            flushThreadLocalBatches();
             keepRunning = false;
             executorService.shutdown();
             try {
@@ -67,19 +76,23 @@ public class TimbermillServerOutputPipe implements EventOutputPipe {
             } catch (InterruptedException e) {
                 executorService.shutdownNow();
             }
+            endpoints.close();
         }));
     }
 
-    private void executeEventsSenders(int maxEventsBatchSize, int numOfThreads) {
+    private void executeEventsSenders(int numOfThreads) {
 
         Runnable getAndSendEventsTask = () -> {
             LOG.info("Starting send events thread");
             do {
                 try {
-                    List<Event> eventsToSend = buffer.getEventsOfSize(maxEventsBatchSize);
+                    long collectStartTime = System.currentTimeMillis();
+                    List<Event> eventsToSend = buffer.getEventsOfSize(batchController.getBatchBytes(), batchController.getLingerMillis());
+                    int batchBytes = eventsToSend.stream().mapToInt(Event::estimatedSize).sum();
+                    batchController.onBatchCollected(batchBytes, System.currentTimeMillis() - collectStartTime);
                     if (!eventsToSend.isEmpty()) {
                         EventsWrapper eventsWrapper = new EventsWrapper(eventsToSend);
-                        sendEvents(eventsWrapper);
+                        sendEvents(eventsWrapper, batchBytes);
                     }
                 } catch (Exception e) {
                     LOG.error("Error sending events to Timbermill server", e);
@@ -95,6 +108,9 @@ public class TimbermillServerOutputPipe implements EventOutputPipe {
 
     public void close() {
         LOG.info("Gracefully shutting down Timbermill output pipe.");
+        if (threadLocalBatcher != null) {
+            threadLocalBatcher.close();
+        }
         keepRunning = false;
         LOG.info("Timbermill server was output pipe.");
 		executorService.shutdown();
@@ -104,24 +120,35 @@ public class TimbermillServerOutputPipe implements EventOutputPipe {
             } catch (InterruptedException ignored) {
             }
         }
+        endpoints.close();
     }
 
-    private void sendEvents(EventsWrapper eventsWrapper) throws IOException {
+    private void sendEvents(EventsWrapper eventsWrapper, int batchBytes) throws IOException {
         byte[] eventsWrapperBytes = getEventsWrapperBytes(eventsWrapper);
         for (int tryNum = 1; tryNum <= MAX_RETRY; tryNum++) {
+            TimbermillServerEndpoints.Endpoint endpoint = endpoints.acquire();
+            boolean success = false;
+            long sendStartTime = System.currentTimeMillis();
             try {
-                HttpURLConnection httpCon = getHttpURLConnection();
+                HttpURLConnection httpCon = getHttpURLConnection(endpoint.getEventsUrl());
                 sendEventsOverConnection(httpCon, eventsWrapperBytes);
                 int responseCode = httpCon.getResponseCode();
                 if (responseCode == 200) {
-                    LOG.debug("{} events were sent to Timbermill server", eventsWrapper.getEvents().size());
+                    LOG.debug("{} events were sent to Timbermill server {}", eventsWrapper.getEvents().size(), endpoint);
+                    success = true;
                     return;
 
                 } else {
-                    LOG.warn("Request #" + tryNum + " to Timbermill return status {}, Attempt: {}/{} Message: {}", responseCode, tryNum, MAX_RETRY, httpCon.getResponseMessage());
+                    LOG.warn("Request #" + tryNum + " to Timbermill {} return status {}, Attempt: {}/{} Message: {}", endpoint, responseCode, tryNum, MAX_RETRY, httpCon.getResponseMessage());
                 }
             } catch (Exception e){
-                LOG.warn("Request #" + tryNum + " to Timbermill failed, Attempt: "+ tryNum + "/" + MAX_RETRY, e);
+                LOG.warn("Request #" + tryNum + " to Timbermill " + endpoint + " failed, Attempt: "+ tryNum + "/" + MAX_RETRY, e);
+            } finally {
+                endpoints.release(endpoint, success);
+                batchController.onSendCompleted(batchBytes, System.currentTimeMillis() - sendStartTime, success);
+            }
+            if (endpoints.canFailOver()) {
+                continue; // Fail over to another endpoint without waiting
             }
             try {
                 Thread.sleep((long) (Math.pow(2 , tryNum) * 1000)); //Exponential backoff
@@ -143,7 +170,7 @@ public class TimbermillServerOutputPipe implements EventOutputPipe {
         return om.writeValueAsBytes(eventsWrapper);
     }
 
-    private HttpURLConnection getHttpURLConnection() throws IOException {
+    private HttpURLConnection getHttpURLConnection(URL timbermillServerUrl) throws IOException {
         HttpURLConnection httpURLConnection = (HttpURLConnection) timbermillServerUrl.openConnection();
         httpURLConnection.setRequestMethod("POST");
         httpURLConnection.setRequestProperty("content-type", "application/json");
@@ -158,13 +185,34 @@ public class TimbermillServerOutputPipe implements EventOutputPipe {
 
     @Override
     public void send(Event e) {
-        if(!this.buffer.offer(e)){
+        if (threadLocalBatcher != null) {
+            threadLocalBatcher.add(e);
+        }
+        else if(!this.buffer.offer(e)){
             LOG.warn("Event {} was removed from the queue due to insufficient space", e.getTaskId());
         }
     }
 
+    @Override
+    public void flush() {
+        flushThreadLocalBatches();
+    }
+
+    private void flushThreadLocalBatches() {
+        if (threadLocalBatcher != null) {
+            threadLocalBatcher.flushAll();
+        }
+    }
+
 	@Override public int getCurrentBufferSize() {
 		return buffer.size();
 	}
 
+	@Override public Map<String, Number> getHeartbeatMetrics() {
+		Map<String, Number> metrics = new HashMap<>();
+		metrics.put(ClientHeartbeater.BATCH_SIZE, batchController.getBatchBytes());
+		metrics.put(ClientHeartbeater.BATCH_LINGER_MILLIS, batchController.getLingerMillis());
+		return metrics;
+	}
+
 }
\ No newline at end of file
@@ -1,16 +1,50 @@
 package com.datorama.oss.timbermill.pipe;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
 public class TimbermillServerOutputPipeBuilder {
-	String timbermillServerUrl;
+	List<String> timbermillServerUrls = new ArrayList<>();
+	String healthCheckPath = "/actuator/health";
+	long endpointEjectionSeconds = 30;
+	long healthCheckIntervalSeconds = 10;
 	int maxEventsBatchSize = 2097152; // 2MB
 	long maxSecondsBeforeBatchTimeout = 3;
+	boolean adaptiveBatching = false;
+	int minEventsBatchSize = 65536; // 64KB
+	long minMillisBeforeBatchTimeout = 100;
+	long targetSendLatencyMillis = 1000;
 	int maxBufferSize = 200000;
 	int numOfThreads = 1;
 	boolean sendGzippedRequest = true;
+	int threadLocalBatchSize = 0; // Disabled
+	long threadLocalFlushIntervalMillis = 500;
 
 
 	public TimbermillServerOutputPipeBuilder timbermillServerUrl(String timbermillServerUrl) {
-		this.timbermillServerUrl = timbermillServerUrl;
+		this.timbermillServerUrls = timbermillServerUrl == null ? new ArrayList<>() : Lists.newArrayList(timbermillServerUrl);
+		return this;
+	}
+
+	public TimbermillServerOutputPipeBuilder timbermillServerUrls(List<String> timbermillServerUrls) {
+		this.timbermillServerUrls = timbermillServerUrls;
+		return this;
+	}
+
+	public TimbermillServerOutputPipeBuilder healthCheckPath(String healthCheckPath) {
+		this.healthCheckPath = healthCheckPath;
+		return this;
+	}
+
+	public TimbermillServerOutputPipeBuilder endpointEjectionSeconds(long endpointEjectionSeconds) {
+		this.endpointEjectionSeconds = endpointEjectionSeconds;
+		return this;
+	}
+
+	public TimbermillServerOutputPipeBuilder healthCheckIntervalSeconds(long healthCheckIntervalSeconds) {
+		this.healthCheckIntervalSeconds = healthCheckIntervalSeconds;
 		return this;
 	}
 
@@ -24,6 +58,26 @@ public class TimbermillServerOutputPipeBuilder {
 		return this;
 	}
 
+	public TimbermillServerOutputPipeBuilder adaptiveBatching(boolean adaptiveBatching) {
+		this.adaptiveBatching = adaptiveBatching;
+		return this;
+	}
+
+	public TimbermillServerOutputPipeBuilder minEventsBatchSize(int minEventsBatchSize) {
+		this.minEventsBatchSize = minEventsBatchSize;
+		return this;
+	}
+
+	public TimbermillServerOutputPipeBuilder minMillisBeforeBatchTimeout(long minMillisBeforeBatchTimeout) {
+		this.minMillisBeforeBatchTimeout = minMillisBeforeBatchTimeout;
+		return this;
+	}
+
+	public TimbermillServerOutputPipeBuilder targetSendLatencyMillis(long targetSendLatencyMillis) {
+		this.targetSendLatencyMillis = targetSendLatencyMillis;
+		return this;
+	}
+
 	public TimbermillServerOutputPipeBuilder maxBufferSize(int maxBufferSize) {
 		this.maxBufferSize = maxBufferSize;
 		return this;
@@ -39,6 +93,16 @@ public class TimbermillServerOutputPipeBuilder {
 		return this;
 	}
 
+	public TimbermillServerOutputPipeBuilder threadLocalBatchSize(int threadLocalBatchSize) {
+		this.threadLocalBatchSize = threadLocalBatchSize;
+		return this;
+	}
+
+	public TimbermillServerOutputPipeBuilder threadLocalFlushIntervalMillis(long threadLocalFlushIntervalMillis) {
+		this.threadLocalFlushIntervalMillis = threadLocalFlushIntervalMillis;
+		return this;
+	}
+
 	public TimbermillServerOutputPipe build() {
 		return new TimbermillServerOutputPipe(this);
 	}
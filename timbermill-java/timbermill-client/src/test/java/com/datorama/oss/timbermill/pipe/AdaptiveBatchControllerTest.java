@@ -0,0 +1,54 @@
+package com.datorama.oss.timbermill.pipe;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveBatchControllerTest {
+
+	@Test
+	public void batchSizeAdaptsToSendLatencyTest() {
+		AdaptiveBatchController controller = new AdaptiveBatchController(1000, 8000, 100, 3000, 1000);
+		assertEquals(8000, controller.getBatchBytes());
+
+		controller.onSendCompleted(8000, 100, false);
+		assertEquals(4000, controller.getBatchBytes());
+		controller.onSendCompleted(4000, 2000, true);
+		assertEquals(3200, controller.getBatchBytes());
+		for (int i = 0; i < 10; i++) {
+			controller.onSendCompleted(1000, 100, false);
+		}
+		assertEquals(1000, controller.getBatchBytes());
+
+		// Only full batches that were sent fast grow the batch size
+		controller.onSendCompleted(500, 100, true);
+		assertEquals(1000, controller.getBatchBytes());
+		for (int i = 0; i < 20; i++) {
+			controller.onSendCompleted(controller.getBatchBytes(), 100, true);
+		}
+		assertEquals(8000, controller.getBatchBytes());
+	}
+
+	@Test
+	public void lingerAdaptsToArrivalRateTest() {
+		AdaptiveBatchController controller = new AdaptiveBatchController(1000, 8000, 100, 3000, 1000);
+		assertEquals(3000, controller.getLingerMillis());
+
+		// Low traffic, a batch can't be filled in time so events are sent right away
+		controller.onBatchCollected(10, 3000);
+		assertEquals(100, controller.getLingerMillis());
+
+		AdaptiveBatchController mediumTraffic = new AdaptiveBatchController(1000, 8000, 100, 3000, 1000);
+		mediumTraffic.onBatchCollected(1000, 2000);
+		assertEquals(2000, mediumTraffic.getLingerMillis());
+	}
+
+	@Test
+	public void fixedControllerTest() {
+		AdaptiveBatchController controller = AdaptiveBatchController.fixed(8000, 3000);
+		controller.onSendCompleted(8000, 100000, false);
+		controller.onBatchCollected(10, 3000);
+		assertEquals(8000, controller.getBatchBytes());
+		assertEquals(3000, controller.getLingerMillis());
+	}
+}
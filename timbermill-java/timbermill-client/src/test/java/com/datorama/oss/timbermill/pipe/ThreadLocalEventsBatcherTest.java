@@ -0,0 +1,53 @@
+package com.datorama.oss.timbermill.pipe;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.datorama.oss.timbermill.unit.Event;
+import com.datorama.oss.timbermill.unit.LogParams;
+import com.datorama.oss.timbermill.unit.StartEvent;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+
+public class ThreadLocalEventsBatcherTest {
+
+	@Test
+	public void fullBatchIsPublishedTest() {
+		SizedBoundEventsQueue queue = new SizedBoundEventsQueue(100000, 5);
+		ThreadLocalEventsBatcher batcher = new ThreadLocalEventsBatcher(queue, 2, 60000);
+		Event e1 = new StartEvent("id1", "name1", LogParams.create(), null);
+		Event e2 = new StartEvent("id2", "name2", LogParams.create(), null);
+		Event e3 = new StartEvent("id3", "name3", LogParams.create(), null);
+
+		batcher.add(e1);
+		assertNull(queue.poll());
+		batcher.add(e2);
+		batcher.add(e3);
+		assertEquals(e1, queue.poll());
+		assertEquals(e2, queue.poll());
+		assertNull(queue.poll());
+		assertEquals(1, batcher.getPendingEventsAmount());
+
+		batcher.close();
+		assertEquals(e3, queue.poll());
+		assertEquals(0, batcher.getPendingEventsAmount());
+	}
+
+	@Test
+	public void deadThreadBatchIsFlushedTest() throws InterruptedException {
+		SizedBoundEventsQueue queue = new SizedBoundEventsQueue(100000, 5);
+		ThreadLocalEventsBatcher batcher = new ThreadLocalEventsBatcher(queue, 100, 100);
+		Event e1 = new StartEvent("id1", "name1", LogParams.create(), null);
+
+		Thread thread = new Thread(() -> batcher.add(e1));
+		thread.start();
+		thread.join();
+
+		await().atMost(5, TimeUnit.SECONDS).until(() -> queue.size() > 0);
+		assertEquals(e1, queue.poll());
+		assertEquals(0, batcher.getPendingEventsAmount());
+		batcher.close();
+	}
+}
@@ -0,0 +1,49 @@
+package com.datorama.oss.timbermill.pipe;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import static org.junit.Assert.*;
+
+public class TimbermillServerEndpointsTest {
+
+	@Test
+	public void leastOutstandingRequestsTest() {
+		TimbermillServerEndpoints endpoints = new TimbermillServerEndpoints(Lists.newArrayList("http://host1:8484", "http://host2:8484"), "/actuator/health", 30, 0);
+		TimbermillServerEndpoints.Endpoint first = endpoints.acquire();
+		TimbermillServerEndpoints.Endpoint second = endpoints.acquire();
+		assertNotEquals(first, second);
+
+		endpoints.release(first, true);
+		assertEquals(first, endpoints.acquire());
+		endpoints.close();
+	}
+
+	@Test
+	public void failedEndpointIsEjectedTest() {
+		TimbermillServerEndpoints endpoints = new TimbermillServerEndpoints(Lists.newArrayList("http://host1:8484", "http://host2:8484"), "/actuator/health", 30, 0);
+		TimbermillServerEndpoints.Endpoint failed = endpoints.acquire();
+		endpoints.release(failed, false);
+		assertTrue(endpoints.canFailOver());
+
+		TimbermillServerEndpoints.Endpoint other = endpoints.acquire();
+		assertNotEquals(failed, other);
+		endpoints.release(other, false);
+		assertFalse(endpoints.canFailOver());
+
+		// When all endpoints are ejected the one ejected first is retried
+		assertEquals(failed, endpoints.acquire());
+		endpoints.close();
+	}
+
+	@Test
+	public void singleEndpointIsNeverEjectedTest() {
+		TimbermillServerEndpoints endpoints = new TimbermillServerEndpoints(Lists.newArrayList("http://host1:8484"), "/actuator/health", 30, 0);
+		TimbermillServerEndpoints.Endpoint endpoint = endpoints.acquire();
+		endpoints.release(endpoint, false);
+		assertEquals(endpoint, endpoints.acquire());
+		assertFalse(endpoints.canFailOver());
+		endpoints.close();
+	}
+}
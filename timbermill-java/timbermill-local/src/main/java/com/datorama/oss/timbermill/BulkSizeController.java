@@ -0,0 +1,138 @@
+package com.datorama.oss.timbermill;
+
+import com.datorama.oss.timbermill.common.KamonConstants;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/*
+ * Adjusts the bulk size and the number of bulks in flight with AIMD. Every healthy bulk grows the limits additively,
+ * and a bulk that was rejected by Elasticsearch or took much longer than usual halves them, once per congestion.
+ * The configured bulk size and indexing threads are the ceilings, so a healthy cluster is indexed to exactly as before.
+ */
+class BulkSizeController {
+
+	private static final Logger LOG = LoggerFactory.getLogger(BulkSizeController.class);
+	private static final int MIN_BULK_SIZE_RATIO = 20;
+	private static final int BULK_SIZE_INCREASE_RATIO = 10;
+	private static final double DECREASE_FACTOR = 0.5;
+	private static final double SLOW_BULK_FACTOR = 3;
+	private static final long MIN_SLOW_BULK_MILLIS = 1000;
+	private static final double TOOK_SMOOTHING = 0.2;
+
+	private final int maxBulkSize;
+	private final int minBulkSize;
+	private final int maxConcurrency;
+	private int bulkSize;
+	private int concurrency;
+	private int inFlight;
+	private int successesSinceIncrease;
+	private long lastDecreaseNanos;
+	private double averageTookMillis = -1;
+
+	BulkSizeController(int maxBulkSize, int maxConcurrency) {
+		this.maxBulkSize = maxBulkSize;
+		this.minBulkSize = Math.max(1, maxBulkSize / MIN_BULK_SIZE_RATIO);
+		this.maxConcurrency = maxConcurrency;
+		this.bulkSize = maxBulkSize;
+		this.concurrency = maxConcurrency;
+		this.lastDecreaseNanos = System.nanoTime();
+		reportLimits();
+	}
+
+	synchronized int getBulkSize() {
+		return bulkSize;
+	}
+
+	synchronized int getConcurrency() {
+		return concurrency;
+	}
+
+	// Blocks until the bulk may be sent, returns its start time that must be given back on release
+	synchronized long acquire() {
+		try {
+			while (inFlight >= concurrency) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		inFlight++;
+		return System.nanoTime();
+	}
+
+	synchronized void release(long startNanos, List<BulkResponse> responses) {
+		inFlight--;
+		if (isCongested(responses)) {
+			decrease(startNanos);
+		}
+		else {
+			increase();
+		}
+		notifyAll();
+	}
+
+	// No responses means every try has thrown, which is how whole request rejections surface
+	private boolean isCongested(List<BulkResponse> responses) {
+		if (responses == null || responses.isEmpty()) {
+			return true;
+		}
+		boolean congested = false;
+		for (BulkResponse response : responses) {
+			long tookMillis = response.getTook().millis();
+			if (averageTookMillis >= 0 && tookMillis > Math.max(MIN_SLOW_BULK_MILLIS, averageTookMillis * SLOW_BULK_FACTOR)) {
+				congested = true;
+			}
+			averageTookMillis = averageTookMillis < 0 ? tookMillis : averageTookMillis + TOOK_SMOOTHING * (tookMillis - averageTookMillis);
+			if (response.hasFailures() && hasRejections(response)) {
+				congested = true;
+			}
+		}
+		return congested;
+	}
+
+	private static boolean hasRejections(BulkResponse response) {
+		for (BulkItemResponse item : response) {
+			if (item.isFailed() && item.status() == RestStatus.TOO_MANY_REQUESTS) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Bulks that were already in flight when the limits were lowered are answered by the same congestion, so they don't lower them again
+	private void decrease(long startNanos) {
+		successesSinceIncrease = 0;
+		if (startNanos - lastDecreaseNanos < 0) {
+			return;
+		}
+		lastDecreaseNanos = System.nanoTime();
+		bulkSize = Math.max(minBulkSize, (int) (bulkSize * DECREASE_FACTOR));
+		concurrency = Math.max(1, (int) (concurrency * DECREASE_FACTOR));
+		LOG.warn("Elasticsearch is congested, lowered bulk size to {} bytes and concurrent bulks to {}", bulkSize, concurrency);
+		reportLimits();
+	}
+
+	// The bulk size grows on every healthy bulk, the concurrency grows once a full round of bulks was healthy
+	private void increase() {
+		if (bulkSize == maxBulkSize && concurrency == maxConcurrency) {
+			return;
+		}
+		bulkSize = Math.min(maxBulkSize, bulkSize + Math.max(1, maxBulkSize / BULK_SIZE_INCREASE_RATIO));
+		successesSinceIncrease++;
+		if (successesSinceIncrease >= concurrency) {
+			successesSinceIncrease = 0;
+			concurrency = Math.min(maxConcurrency, concurrency + 1);
+		}
+		reportLimits();
+	}
+
+	private void reportLimits() {
+		KamonConstants.BULK_SIZE_LIMIT_GAUGE.withoutTags().update(bulkSize);
+		KamonConstants.BULK_CONCURRENCY_LIMIT_GAUGE.withoutTags().update(concurrency);
+	}
+}
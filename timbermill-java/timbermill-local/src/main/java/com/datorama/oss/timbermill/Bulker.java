@@ -1,6 +1,7 @@
 package com.datorama.oss.timbermill;
 
 import com.datorama.oss.timbermill.common.persistence.DbBulkRequest;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
@@ -17,4 +18,8 @@ public class Bulker {
 	public BulkResponse bulk(DbBulkRequest request) throws IOException {
 		return client.bulk(request.getRequest(), RequestOptions.DEFAULT);
 	}
+
+	public void bulkAsync(DbBulkRequest request, ActionListener<BulkResponse> listener) {
+		client.bulkAsync(request.getRequest(), RequestOptions.DEFAULT, listener);
+	}
 }
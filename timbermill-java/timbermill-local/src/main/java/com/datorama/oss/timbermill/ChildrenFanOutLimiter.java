@@ -0,0 +1,96 @@
+package com.datorama.oss.timbermill;
+
+import com.datorama.oss.timbermill.common.cache.AbstractCacheHandler;
+import com.datorama.oss.timbermill.common.cache.CacheLock;
+import com.datorama.oss.timbermill.unit.ChildrenFanOut;
+import com.datorama.oss.timbermill.unit.Event;
+import com.datorama.oss.timbermill.unit.FoldedChildrenTask;
+import com.datorama.oss.timbermill.unit.LocalTask;
+
+import java.util.*;
+
+/*
+ * Caps the amount of children of the same name indexed under one parent, the children counts are kept in the cache.
+ * Children beyond the cap that completed within the batch are folded into an aggregate document of the parent instead of being indexed,
+ * their events are handed back to be cached so their own children in later batches are still enriched.
+ * The aggregates are written to the parent's index when it is cached, and only hold the children folded in the batch, which are added to the document.
+ */
+class ChildrenFanOutLimiter {
+
+    private static final String KEY_DELIMITER = "###";
+
+    private final int maxChildrenPerParent;
+    private final long daysRotation;
+
+    ChildrenFanOutLimiter(int maxChildrenPerParent, long daysRotation) {
+        if (maxChildrenPerParent < 0) {
+            throw new RuntimeException("Max children per parent property should not be below 0");
+        }
+        this.maxChildrenPerParent = maxChildrenPerParent;
+        this.daysRotation = daysRotation;
+    }
+
+    boolean isEnabled() {
+        return maxChildrenPerParent > 0;
+    }
+
+    // Moves the folded children's events from the batch to foldedEvents, returns the parents' aggregate documents by their ids, with the parents' index when cached
+    Map<String, FoldedChildrenTask> fold(Collection<Event> events, String env, AbstractCacheHandler cacheHandler, Collection<Event> foldedEvents) {
+        Map<String, List<Event>> childrenByKey = new LinkedHashMap<>();
+        Set<String> parentIds = new HashSet<>();
+        for (Event event : events) {
+            if (event.isStartEvent() && event.getParentId() != null && event.getName() != null) {
+                childrenByKey.computeIfAbsent(getKey(event.getParentId(), event.getName()), key -> new ArrayList<>()).add(event);
+                parentIds.add(event.getParentId());
+            }
+        }
+        if (childrenByKey.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, CompletedTask> completedChildren = CompletedTask.findCompletedTasks(events, event -> event.getParentId() != null);
+
+        Set<String> foldedIds = new HashSet<>();
+        Map<String, FoldedChildrenTask> aggregates = new HashMap<>();
+        CacheLock cacheLock = cacheHandler.lock(parentIds);
+        try {
+            Map<String, ChildrenFanOut> fanOuts = cacheHandler.getChildrenFanOuts(childrenByKey.keySet());
+            Map<String, LocalTask> parents = null;
+            for (Map.Entry<String, List<Event>> entry : childrenByKey.entrySet()) {
+                ChildrenFanOut fanOut = fanOuts.computeIfAbsent(entry.getKey(), key -> new ChildrenFanOut());
+                ChildrenFanOut batchFolded = new ChildrenFanOut();
+                for (Event child : entry.getValue()) {
+                    CompletedTask completedChild = completedChildren.get(child.getTaskId());
+                    if (fanOut.addChild() > maxChildrenPerParent && completedChild != null) {
+                        fanOut.addFolded(completedChild.getDuration(), completedChild.isError());
+                        batchFolded.addFolded(completedChild.getDuration(), completedChild.isError());
+                        foldedIds.add(child.getTaskId());
+                    }
+                }
+                if (batchFolded.getFoldedCount() > 0) {
+                    if (parents == null) {
+                        parents = cacheHandler.logGetFromTasksCache(parentIds, "fold_children");
+                    }
+                    Event child = entry.getValue().get(0);
+                    FoldedChildrenTask aggregate = new FoldedChildrenTask(env, child.getParentId(), child.getName(), fanOut.getChildrenCount(), batchFolded, daysRotation);
+                    LocalTask parent = parents.get(child.getParentId());
+                    if (parent != null) {
+                        aggregate.setIndex(parent.getIndex());
+                    }
+                    aggregates.put(child.getParentId() + "_" + child.getName() + "_folded", aggregate);
+                }
+            }
+            cacheHandler.pushChildrenFanOuts(fanOuts);
+        } finally {
+            cacheHandler.release(cacheLock);
+        }
+
+        if (!foldedIds.isEmpty()) {
+            CompletedTask.moveEvents(events, foldedIds, foldedEvents);
+        }
+        return aggregates;
+    }
+
+    private static String getKey(String parentId, String name) {
+        return parentId + KEY_DELIMITER + name;
+    }
+}
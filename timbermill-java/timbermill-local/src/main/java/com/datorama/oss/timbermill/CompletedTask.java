@@ -0,0 +1,133 @@
+package com.datorama.oss.timbermill;
+
+import com.datorama.oss.timbermill.unit.*;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/*
+ * A task that both started and ended within a single batch, so it can be summarized instead of indexed.
+ */
+class CompletedTask {
+
+    private final String taskId;
+    private final String name;
+    private final String parentId;
+    private final long startMillis;
+    private final long duration;
+    private final boolean error;
+    private final Map<String, String> strings = new HashMap<>();
+
+    private CompletedTask(String taskId, String name, String parentId, long startMillis, long duration, boolean error) {
+        this.taskId = taskId;
+        this.name = name;
+        this.parentId = parentId;
+        this.startMillis = startMillis;
+        this.duration = duration;
+        this.error = error;
+    }
+
+    // Tasks whose start event matches the filter, that completed within the events and that no other event points to as its parent
+    static Map<String, CompletedTask> findCompletedTasks(Collection<Event> events, Predicate<Event> startEventFilter) {
+        Map<String, List<Event>> candidates = new HashMap<>();
+        for (Event event : events) {
+            if (event.isStartEvent() && startEventFilter.test(event)) {
+                candidates.put(event.getTaskId(), new ArrayList<>());
+            }
+        }
+        if (candidates.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        for (Event event : events) {
+            List<Event> taskEvents = candidates.get(event.getTaskId());
+            if (taskEvents != null) {
+                taskEvents.add(event);
+            }
+            if (event.getParentId() != null) {
+                candidates.remove(event.getParentId());
+            }
+        }
+
+        Map<String, CompletedTask> completedTasks = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Event>> entry : candidates.entrySet()) {
+            CompletedTask completedTask = of(entry.getValue());
+            if (completedTask != null) {
+                completedTasks.put(entry.getKey(), completedTask);
+            }
+        }
+        return completedTasks;
+    }
+
+    // Moves the events of the given tasks out of the events, so they can still be cached after they were summarized
+    static void moveEvents(Collection<Event> events, Set<String> taskIds, Collection<Event> movedEvents) {
+        Iterator<Event> iterator = events.iterator();
+        while (iterator.hasNext()) {
+            Event event = iterator.next();
+            if (taskIds.contains(event.getTaskId())) {
+                movedEvents.add(event);
+                iterator.remove();
+            }
+        }
+    }
+
+    // Null if the task didn't both start and end within the events
+    private static CompletedTask of(List<Event> taskEvents) {
+        Event start = null;
+        Event end = null;
+        for (Event event : taskEvents) {
+            if (event.isStartEvent()) {
+                if (start != null) {
+                    return null;
+                }
+                start = event;
+            }
+            if (event instanceof SpotEvent || event instanceof SuccessEvent || event instanceof ErrorEvent) {
+                if (end != null) {
+                    return null;
+                }
+                end = event;
+            }
+        }
+        if (start == null || end == null || start.getTime() == null || end.getTime() == null) {
+            return null;
+        }
+        long startMillis = start.getTime().toInstant().toEpochMilli();
+        long duration = Math.max(0, end.getTime().toInstant().toEpochMilli() - startMillis);
+        boolean error = end instanceof ErrorEvent || (end instanceof SpotEvent && ((SpotEvent) end).getStatus() == TaskStatus.ERROR);
+        CompletedTask completedTask = new CompletedTask(start.getTaskId(), start.getName(), start.getParentId(), startMillis, duration, error);
+        for (Event event : taskEvents) {
+            if (event.getStrings() != null) {
+                completedTask.strings.putAll(event.getStrings());
+            }
+        }
+        return completedTask;
+    }
+
+    String getTaskId() {
+        return taskId;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getParentId() {
+        return parentId;
+    }
+
+    long getStartMillis() {
+        return startMillis;
+    }
+
+    long getDuration() {
+        return duration;
+    }
+
+    boolean isError() {
+        return error;
+    }
+
+    Map<String, String> getStrings() {
+        return strings;
+    }
+}
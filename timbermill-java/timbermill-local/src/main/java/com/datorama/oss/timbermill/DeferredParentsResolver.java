@@ -0,0 +1,107 @@
+package com.datorama.oss.timbermill;
+
+import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.common.cache.MissingParentsCache;
+import com.datorama.oss.timbermill.unit.Task;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/*
+ * Looks up parents that weren't found in the cache in the background, so batches don't wait on Elasticsearch.
+ * Their children were already indexed and cached as orphans. The found parents are handed back to the indexing thread,
+ * which caches them and adopts their orphans, so the caches are only ever written by the indexing thread.
+ */
+class DeferredParentsResolver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DeferredParentsResolver.class);
+    private static final int MAX_PENDING_PARENTS = 100000;
+    private static final long RESOLVE_INTERVAL_MILLIS = 1000;
+
+    private final ElasticsearchClient es;
+    private final MissingParentsCache missingParentsCache;
+    private final Map<String, Set<String>> pendingParentIdsByEnv = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingParentsAmount = new AtomicInteger(0);
+    private final Map<String, Task> foundParents = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService resolver;
+
+    // The missing parents cache is optional
+    DeferredParentsResolver(ElasticsearchClient es, MissingParentsCache missingParentsCache) {
+        this.es = es;
+        this.missingParentsCache = missingParentsCache;
+        resolver = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("timbermill-parents-resolver-%d").setDaemon(true).build());
+        resolver.scheduleWithFixedDelay(this::resolve, RESOLVE_INTERVAL_MILLIS, RESOLVE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // Parents beyond the pending limit are not looked up, their orphans are still adopted if the parent is received later on
+    void defer(String env, Set<String> parentIds) {
+        Set<String> pendingParentIds = pendingParentIdsByEnv.computeIfAbsent(env, e -> Sets.newConcurrentHashSet());
+        int dropped = 0;
+        for (String parentId : parentIds) {
+            if (pendingParentsAmount.get() >= MAX_PENDING_PARENTS) {
+                dropped++;
+            }
+            else if (pendingParentIds.add(parentId)) {
+                pendingParentsAmount.incrementAndGet();
+            }
+        }
+        if (dropped > 0) {
+            LOG.warn("Too many parents are pending lookup, {} parents won't be looked up in Elasticsearch", dropped);
+        }
+    }
+
+    void resolve() {
+        for (Map.Entry<String, Set<String>> entry : pendingParentIdsByEnv.entrySet()) {
+            Set<String> parentIds = Sets.newHashSet(entry.getValue());
+            if (parentIds.isEmpty()) {
+                continue;
+            }
+            entry.getValue().removeAll(parentIds);
+            pendingParentsAmount.addAndGet(-parentIds.size());
+            try {
+                resolve(entry.getKey(), parentIds);
+            } catch (RuntimeException e) {
+                LOG.error("Failed resolving deferred parents", e);
+            }
+        }
+    }
+
+    private void resolve(String env, Set<String> parentIds) {
+        Map<String, Task> parents = es.getMissingParents(parentIds, env);
+        KamonConstants.MISSING_PARENTS_TASKS_FETCHED_HISTOGRAM.withoutTags().record(parents.size());
+        if (missingParentsCache != null) {
+            missingParentsCache.putMissing(parentIds.stream().filter(id -> !parents.containsKey(id)).collect(Collectors.toSet()));
+        }
+        foundParents.putAll(parents);
+    }
+
+    // Called from the indexing thread, the returned parents are no longer held here
+    Map<String, Task> drainFoundParents() {
+        Map<String, Task> drained = Maps.newHashMap();
+        for (String parentId : foundParents.keySet()) {
+            Task parent = foundParents.remove(parentId);
+            if (parent != null) {
+                drained.put(parentId, parent);
+            }
+        }
+        return drained;
+    }
+
+    void close() {
+        resolver.shutdown();
+        try {
+            resolver.awaitTermination(RESOLVE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        resolve();
+    }
+}
@@ -21,9 +21,11 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.*;
 import com.google.gson.internal.LazilyParsedNumber;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.auth.AuthScope;
@@ -31,6 +33,8 @@ import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.admin.cluster.storedscripts.PutStoredScriptRequest;
 import org.elasticsearch.action.admin.indices.alias.Alias;
 import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
@@ -98,8 +102,12 @@ public class ElasticsearchClient {
 	private static final Logger LOG = LoggerFactory.getLogger(ElasticsearchClient.class);
 	private static final String TTL_FIELD = "meta.dateToDelete";
     private static final String META_TASK_BEGIN = "meta.taskBegin";
+	private static final int METADATA_TASKS_QUEUE_CAPACITY = 100000;
+	private static final int METADATA_TASKS_BULK_SIZE = 1000;
+	private static final long METADATA_TASKS_FLUSH_INTERVAL_MILLIS = 1000;
+	private static final int MAX_LOOKUP_HITS = 10000;
 	protected final RestHighLevelClient client;
-	private final int indexBulkSize;
+	private final BulkSizeController bulkSizeController;
 	private final ExecutorService executorService;
 	private final int numberOfShards;
 	private final int maxSlices;
@@ -116,6 +124,11 @@ public class ElasticsearchClient {
 	private final int fetchByIdsPartitions;
 	private AtomicInteger concurrentScrolls = new AtomicInteger(0);
 	private final int expiredMaxIndicesTodeleteInParallel;
+	private final Map<String, String> currentIndices = new ConcurrentHashMap<>();
+	private final Set<String> envsWithOldAlias = ConcurrentHashMap.newKeySet();
+	private final BlockingQueue<Pair<String, IndexRequest>> metadataTasksQueue = new LinkedBlockingQueue<>(METADATA_TASKS_QUEUE_CAPACITY);
+	private final ScheduledExecutorService metadataTasksFlusher;
+	private Pair<Set<String>, Collection<Future<List<BulkResponse>>>> pendingBulks;
 
 	public ElasticsearchClient(String elasticUrl, int indexBulkSize, int indexingThreads, String awsRegion, String elasticUser, String elasticPassword, long maxIndexAge,
 							   long maxIndexSizeInGB, long maxIndexDocs, int numOfElasticSearchActionsTries, int maxBulkIndexFetches, int searchMaxSize, PersistenceHandler persistenceHandler, int numberOfShards, int numberOfReplicas,
@@ -123,7 +136,7 @@ public class ElasticsearchClient {
 
 		validateProperties(indexBulkSize, indexingThreads, maxIndexAge, maxIndexSizeInGB, maxIndexDocs, numOfElasticSearchActionsTries, numOfElasticSearchActionsTries, scrollLimitation,
 				scrollTimeoutSeconds, fetchByIdsPartitions, numberOfShards, expiredMaxIndicesTodeleteInParallel);
-		this.indexBulkSize = indexBulkSize;
+		this.bulkSizeController = new BulkSizeController(indexBulkSize, indexingThreads);
 		this.searchMaxSize = searchMaxSize;
 		this.maxIndexAge = maxIndexAge;
         this.maxIndexSizeInGB = maxIndexSizeInGB;
@@ -139,24 +152,39 @@ public class ElasticsearchClient {
         HttpHost httpHost = HttpHost.create(elasticUrl);
         LOG.info("Connecting to Elasticsearch at url {}", httpHost.toURI());
         RestClientBuilder builder = RestClient.builder(httpHost);
+        HttpRequestInterceptor interceptor = null;
         if (!StringUtils.isEmpty(awsRegion)){
             LOG.info("Trying to connect to AWS Elasticsearch");
             AWS4Signer signer = new AWS4Signer();
             String serviceName = "es";
             signer.setServiceName(serviceName);
             signer.setRegionName(awsRegion);
-            HttpRequestInterceptor interceptor = new AWSRequestSigningApacheInterceptor(serviceName, signer, new DefaultAWSCredentialsProviderChain());
-            builder.setHttpClientConfigCallback(callback -> callback.addInterceptorLast(interceptor));
+            interceptor = new AWSRequestSigningApacheInterceptor(serviceName, signer, new DefaultAWSCredentialsProviderChain());
         }
 
+        CredentialsProvider credentialsProvider = null;
         if (!StringUtils.isEmpty(elasticUser)){
             LOG.info("Connection to Elasticsearch using user {}", elasticUser);
-            final CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+            credentialsProvider = new BasicCredentialsProvider();
             credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(elasticUser, elasticPassword));
-            builder.setHttpClientConfigCallback(httpClientBuilder -> httpClientBuilder
-                    .setDefaultCredentialsProvider(credentialsProvider));
         }
 
+        // Every indexing thread may have a bulk on the wire, on top of the searches and the metadata bulks
+        int maxConnections = indexingThreads + RestClientBuilder.DEFAULT_MAX_CONN_PER_ROUTE;
+        HttpRequestInterceptor finalInterceptor = interceptor;
+        CredentialsProvider finalCredentialsProvider = credentialsProvider;
+        builder.setHttpClientConfigCallback(httpClientBuilder -> {
+            httpClientBuilder.setMaxConnPerRoute(maxConnections).setMaxConnTotal(Math.max(maxConnections, RestClientBuilder.DEFAULT_MAX_CONN_TOTAL));
+            // Basic credentials take precedence over the AWS signer, as when each had its own callback
+            if (finalCredentialsProvider != null) {
+                httpClientBuilder.setDefaultCredentialsProvider(finalCredentialsProvider);
+            }
+            else if (finalInterceptor != null) {
+                httpClientBuilder.addInterceptorLast(finalInterceptor);
+            }
+            return httpClientBuilder;
+        });
+
         client = new RestHighLevelClient(builder);
         if (bulker == null){
         	bulker = new Bulker(client);
@@ -170,6 +198,8 @@ public class ElasticsearchClient {
 				.withExponentialBackoff()
 				.build();
 		bootstrapElasticsearch(numberOfShards, numberOfReplicas, maxTotalFields);
+		metadataTasksFlusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("timbermill-metadata-flusher-%d").setDaemon(true).build());
+		metadataTasksFlusher.scheduleWithFixedDelay(this::flushMetaDataTasks, METADATA_TASKS_FLUSH_INTERVAL_MILLIS, METADATA_TASKS_FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
     }
 
     private void validateProperties(int indexBulkSize, int indexingThreads, long maxIndexAge, long maxIndexSizeInGB, long maxIndexDocs, int numOfMergedTasksTries, int numOfElasticSearchActionsTries,
@@ -285,17 +315,7 @@ public class ElasticsearchClient {
 
 		for (Future<Map<String, List<Task>>> future : futures) {
 			try {
-				Map<String, List<Task>> tasks = future.get();
-				for (Map.Entry<String, List<Task>> entry : tasks.entrySet()) {
-					List<Task> tasksList = entry.getValue();
-					String taskId = entry.getKey();
-					if (tasksList.size() == 1){
-						retMap.put(taskId, tasksList.get(0));
-					}
-					else {
-						LOG.warn("Fetched multiple tasks per id [{}] from Elasticsearch for [{}] Tasks: {}", taskId, functionDescription, tasksList);
-					}
-				}
+				putSingleTasks(future.get(), retMap, functionDescription);
 			} catch (InterruptedException | ExecutionException e) {
 				LOG.error("Error while concurrently running sliced scrolls for [" + functionDescription + "]", e);
 			}
@@ -303,6 +323,71 @@ public class ElasticsearchClient {
 		return retMap;
     }
 
+	private static void putSingleTasks(Map<String, List<Task>> tasks, Map<String, Task> retMap, String functionDescription) {
+		for (Map.Entry<String, List<Task>> entry : tasks.entrySet()) {
+			List<Task> tasksList = entry.getValue();
+			String taskId = entry.getKey();
+			if (tasksList.size() == 1){
+				retMap.put(taskId, tasksList.get(0));
+			}
+			else {
+				LOG.warn("Fetched multiple tasks per id [{}] from Elasticsearch for [{}] Tasks: {}", taskId, functionDescription, tasksList);
+			}
+		}
+	}
+
+	// Point lookup of tasks by ids, every partition is a single search with no scroll contexts, and all partitions are sent at once
+	private Map<String, Task> lookupTasksByIds(Collection<String> taskIds, String functionDescription, String[] taskFieldsToInclude, String... indices) {
+		// A task can be found once per index, and all of its hits must fit in the result window
+		int partitionSize = Math.max(1, Math.min(fetchByIdsPartitions, MAX_LOOKUP_HITS / indices.length));
+		List<CompletableFuture<SearchResponse>> futures = Lists.newArrayList();
+		for (List<String> batch : Iterables.partition(taskIds, partitionSize)) {
+			SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
+					.query(QueryBuilders.idsQuery().addIds(batch.toArray(new String[0])))
+					.fetchSource(taskFieldsToInclude, null)
+					.size(batch.size() * indices.length)
+					.trackTotalHits(false);
+			CompletableFuture<SearchResponse> future = new CompletableFuture<>();
+			searchAsync(new SearchRequest(indices).source(searchSourceBuilder), functionDescription, Math.max(1, numOfElasticSearchActionsTries), future);
+			futures.add(future);
+		}
+
+		List<SearchResponse> searchResponses = Lists.newArrayList();
+		for (CompletableFuture<SearchResponse> future : futures) {
+			try {
+				searchResponses.add(future.get());
+			} catch (InterruptedException | ExecutionException e) {
+				LOG.error("Error while looking up tasks by ids for [" + functionDescription + "]", e);
+			}
+		}
+		Map<String, Task> retMap = Maps.newHashMap();
+		putSingleTasks(addHitsToMap(searchResponses), retMap, functionDescription);
+		return retMap;
+	}
+
+	private void searchAsync(SearchRequest searchRequest, String functionDescription, int triesLeft, CompletableFuture<SearchResponse> future) {
+		client.searchAsync(searchRequest, RequestOptions.DEFAULT, new ActionListener<SearchResponse>() {
+			@Override
+			public void onResponse(SearchResponse searchResponse) {
+				if (searchResponse.getFailedShards() > 0){
+					LOG.warn("Search failed some shards for {}. First error was {}", functionDescription, searchResponse.getShardFailures()[0].toString());
+				}
+				future.complete(searchResponse);
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				if (triesLeft > 1) {
+					LOG.warn("Failed running [{}], {} tries left. Failure message: {}", functionDescription, triesLeft - 1, e.getMessage());
+					searchAsync(searchRequest, functionDescription, triesLeft - 1, future);
+				}
+				else {
+					future.completeExceptionally(e);
+				}
+			}
+		});
+	}
+
 	private List<Future<Map<String, List<Task>>>> runScrollInSlices(AbstractQueryBuilder queryBuilder, String functionDescription, String[] taskFieldsToInclude, String[] taskFieldsToExclude,
 																	String... indices) {
 		List<Future<Map<String, List<Task>>>> futures = Lists.newArrayList();
@@ -316,18 +401,64 @@ public class ElasticsearchClient {
 		return futures;
 	}
 
+	// Metadata tasks are off the batch path, they are queued with their env and sent together in the periodic metadata bulk,
+	// which resolves their index, so queueing them never calls Elasticsearch
 	void indexMetaDataTasks(String env, Collection<String> metadataEvents) {
-        String index = createTimbermillAlias(env);
+		int dropped = 0;
+		for (String metadataEvent : metadataEvents) {
+			IndexRequest indexRequest = new IndexRequest().type(TYPE).source(metadataEvent, XContentType.JSON);
+			if (!metadataTasksQueue.offer(Pair.of(env, indexRequest))) {
+				dropped++;
+			}
+		}
+		reportDroppedMetaDataTasks(dropped);
+	}
 
-        BulkRequest bulkRequest = new BulkRequest();
-        for (String metadataEvent : metadataEvents) {
-            IndexRequest indexRequest = new IndexRequest(index, TYPE).source(metadataEvent, XContentType.JSON);
-            bulkRequest.add(indexRequest);
-        }
+	private void reportDroppedMetaDataTasks(int dropped) {
+		if (dropped > 0) {
+			LOG.warn("Metadata tasks queue is full, {} metadata tasks were dropped", dropped);
+			KamonConstants.METADATA_TASKS_DROPPED_COUNTER.withoutTags().increment(dropped);
+		}
+	}
+
+	void flushMetaDataTasks() {
 		try {
-			runWithRetries(() -> client.bulk(bulkRequest, RequestOptions.DEFAULT) , "Index metadata tasks");
-		} catch (RetriesExhaustedException e) {
-			LOG.error("Couldn't index metadata event with events " + metadataEvents.toString() + " to elasticsearch cluster.", e);
+			List<Pair<String, IndexRequest>> envToIndexRequests = new ArrayList<>(METADATA_TASKS_BULK_SIZE);
+			while (metadataTasksQueue.drainTo(envToIndexRequests, METADATA_TASKS_BULK_SIZE) > 0) {
+				BulkRequest bulkRequest = new BulkRequest();
+				Map<String, String> envToIndex = new HashMap<>();
+				int dropped = 0;
+				for (Pair<String, IndexRequest> envToIndexRequest : envToIndexRequests) {
+					String index = envToIndex.computeIfAbsent(envToIndexRequest.getLeft(), this::getCurrentIndexOrNull);
+					if (index == null) {
+						dropped++;
+					}
+					else {
+						bulkRequest.add(envToIndexRequest.getRight().index(index));
+					}
+				}
+				reportDroppedMetaDataTasks(dropped);
+				if (bulkRequest.numberOfActions() > 0) {
+					try {
+						runWithRetries(() -> client.bulk(bulkRequest, RequestOptions.DEFAULT), "Index metadata tasks");
+					} catch (RetriesExhaustedException e) {
+						LOG.error("Couldn't index " + bulkRequest.numberOfActions() + " metadata tasks to elasticsearch cluster.", e);
+						KamonConstants.METADATA_TASKS_DROPPED_COUNTER.withoutTags().increment(bulkRequest.numberOfActions());
+					}
+				}
+				envToIndexRequests.clear();
+			}
+		} catch (Throwable t) {
+			LOG.error("Error flushing metadata tasks", t);
+		}
+	}
+
+	private String getCurrentIndexOrNull(String env) {
+		try {
+			return getCurrentIndex(env);
+		} catch (RuntimeException e) {
+			LOG.error("Couldn't resolve the current index of env " + env + ", its metadata tasks were dropped", e);
+			return null;
 		}
 	}
 
@@ -336,6 +467,14 @@ public class ElasticsearchClient {
 	}
 
 	public void close(){
+		metadataTasksFlusher.shutdown();
+		try {
+			metadataTasksFlusher.awaitTermination(METADATA_TASKS_FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flushMetaDataTasks();
+		waitForPendingBulks();
         try {
             client.close();
         } catch (IOException e) {
@@ -363,7 +502,14 @@ public class ElasticsearchClient {
 
 	private List<BulkResponse> sendDbBulkRequest(DbBulkRequest dbBulkRequest, String flowId, int bulkNum) {
 		MDC.put("id", flowId);
-		return retryManager.indexBulkRequest(dbBulkRequest, bulkNum);
+		long startNanos = bulkSizeController.acquire();
+		List<BulkResponse> bulkResponses = null;
+		try {
+			bulkResponses = retryManager.indexBulkRequest(dbBulkRequest, bulkNum);
+			return bulkResponses;
+		} finally {
+			bulkSizeController.release(startNanos, bulkResponses);
+		}
 	}
 	// wrap bulk method as a not-final method in order that Mockito will able to mock it
 
@@ -372,9 +518,30 @@ public class ElasticsearchClient {
 	}
 	//Return number of failed tasks
 
-	public Map<String, String> index(Map<String, Task> tasksMap) {
+	public synchronized Map<String, String> index(Map<String, Task> tasksMap) {
+		waitForPendingBulks();
+		return waitForBulks(createFuturesIndexRequests(tasksMap));
+	}
+
+	// Returns once the previous batch's bulks are done, so this batch is on the wire while the next one is prepared.
+	// A batch that shares tasks with the previous one is only sent after it's done, so updates of the same task are never reordered.
+	synchronized void indexPipelined(Map<String, Task> tasksMap) {
+		if (pendingBulks != null && !Collections.disjoint(pendingBulks.getLeft(), tasksMap.keySet())) {
+			waitForPendingBulks();
+		}
 		Collection<Future<List<BulkResponse>>> futuresRequests = createFuturesIndexRequests(tasksMap);
+		waitForPendingBulks();
+		pendingBulks = Pair.of(Sets.newHashSet(tasksMap.keySet()), futuresRequests);
+	}
 
+	synchronized void waitForPendingBulks() {
+		if (pendingBulks != null) {
+			waitForBulks(pendingBulks.getRight());
+			pendingBulks = null;
+		}
+	}
+
+	private Map<String, String> waitForBulks(Collection<Future<List<BulkResponse>>> futuresRequests) {
 		int bulkNum = 1;
         Map<String, String> overallIdToIndex = Maps.newHashMap();
 		for (Future<List<BulkResponse>> futureRequest : futuresRequests) {
@@ -399,11 +566,65 @@ public class ElasticsearchClient {
 				if (!bulkItemResponse.isFailed()) {
 					retMap.put(bulkItemResponse.getId(), bulkItemResponse.getIndex());
 				}
+				else if (bulkItemResponse.getFailureMessage().contains("index_not_found_exception")) {
+					invalidateCurrentIndex(bulkItemResponse.getIndex());
+				}
 			}
 		}
 		return retMap;
 	}
 
+	// Current write index of an env, resolved once and afterwards kept up to date by the rollover cron so batches don't hit the admin APIs
+	String getCurrentIndex(String env) {
+		String index = currentIndices.get(env);
+		if (index == null) {
+			index = refreshCurrentIndex(env);
+		}
+		return index;
+	}
+
+	public void rolloverCurrentIndices() {
+		for (String env : currentIndices.keySet()) {
+			refreshCurrentIndex(env);
+		}
+	}
+
+	private String refreshCurrentIndex(String env) {
+		String alias = createTimbermillAlias(env);
+		if (alias.endsWith(ElasticsearchUtil.getIndexSerial(1))) {
+			currentIndices.remove(env); // Alias couldn't be created, try again on the next batch
+			return alias;
+		}
+		String index = rolloverIndex(alias);
+		if (index.equals(alias)) {
+			currentIndices.remove(env);
+		} else {
+			refreshOldAliasExists(env, alias);
+			currentIndices.put(env, index);
+		}
+		return index;
+	}
+
+	// An env's old alias only appears on rollover, so it is checked along with the current index instead of on every missing parents lookup
+	private void refreshOldAliasExists(String env, String timbermillAlias) {
+		String oldAlias = getOldAlias(timbermillAlias);
+		try {
+			if (isAliasExists(oldAlias)) {
+				envsWithOldAlias.add(env);
+			} else {
+				envsWithOldAlias.remove(env);
+			}
+		} catch (RetriesExhaustedException e) {
+			LOG.error("Failed checking if old alias " + oldAlias + " exists", e);
+		}
+	}
+
+	private void invalidateCurrentIndex(String index) {
+		if (currentIndices.values().removeIf(index::equals)) {
+			LOG.warn("Index [{}] was not found, it will be resolved again on the next batch", index);
+		}
+	}
+
 	String rolloverIndex(String timbermillAlias) {
         RolloverRequest rolloverRequest = getRolloverRequest(timbermillAlias, maxIndexAge, maxIndexSizeInGB, maxIndexDocs);
         return handleRolloverRequest(timbermillAlias, rolloverRequest);
@@ -413,6 +634,7 @@ public class ElasticsearchClient {
 		String index = createTimbermillAlias(env);
 		RolloverRequest rolloverRequest = getRolloverRequest(index, 1000, 100, 1);
 		handleRolloverRequest(index, rolloverRequest);
+		currentIndices.remove(env);
 	}
 
     private String handleRolloverRequest(String timbermillAlias, RolloverRequest rolloverRequest) {
@@ -535,18 +757,13 @@ public class ElasticsearchClient {
 		KamonConstants.PARTIAL_TASKS_MIGRATED_HISTOGRAM.withTag("index", index).record(matchedTasks.size());
 	}
 
+	// Batches resolve their env's current index first, so whether the env has an old alias is already known
 	Map<String, Task> getMissingParents(Set<String> parentIds, String env) {
 		String timbermillAlias = ElasticsearchUtil.getTimbermillIndexAlias(env);
-		String oldAlias = getOldAlias(timbermillAlias);
-		try {
-			boolean aliasExists = isAliasExists(oldAlias);
-			if (aliasExists){
-				return getTasksByIds(parentIds, "Fetch missing parents tasks", PARENT_FIELDS_TO_FETCH, null, timbermillAlias, oldAlias);
-			}
-		} catch (RetriesExhaustedException e) {
-			LOG.error("Failed checking if Timbermill Alias " + timbermillAlias + " exists", e);
+		if (envsWithOldAlias.contains(env)){
+			return lookupTasksByIds(parentIds, "Fetch missing parents tasks", PARENT_FIELDS_TO_FETCH, timbermillAlias, getOldAlias(timbermillAlias));
 		}
-		return getTasksByIds(parentIds, "Fetch missing parents tasks", PARENT_FIELDS_TO_FETCH, null, timbermillAlias);
+		return lookupTasksByIds(parentIds, "Fetch missing parents tasks", PARENT_FIELDS_TO_FETCH, timbermillAlias);
 	}
 
 	private Set<String> findPartialsIds(String index) {
@@ -608,14 +825,15 @@ public class ElasticsearchClient {
     }
 
 	private Collection<Future<List<BulkResponse>>> createFuturesIndexRequests(Map<String, Task> tasksMap) {
-		Collection<UpdateRequest> requests = createUpdateRequests(tasksMap);
+		Collection<DocWriteRequest<?>> requests = createWriteRequests(tasksMap);
 		BulkRequest request = new BulkRequest();
         Collection<Future<List<BulkResponse>>> futures = new ArrayList<>();
 		int bulkNum = 1;
-        for (UpdateRequest updateRequest : requests) {
-            request.add(updateRequest);
+		int bulkSize = bulkSizeController.getBulkSize();
+        for (DocWriteRequest<?> writeRequest : requests) {
+            request.add(writeRequest);
 
-			if (request.estimatedSizeInBytes() > indexBulkSize) {
+			if (request.estimatedSizeInBytes() > bulkSize) {
 				Future<List<BulkResponse>> future = createFutureTask(request, bulkNum);
 				futures.add(future);
 				request = new BulkRequest();
@@ -632,18 +850,64 @@ public class ElasticsearchClient {
     private Future<List<BulkResponse>> createFutureTask(BulkRequest request, int bulkNum) {
         DbBulkRequest dbBulkRequest = new DbBulkRequest(request);
 		String flowId = MDC.get("id");
-		return executorService.submit(() -> sendDbBulkRequest(dbBulkRequest, flowId, bulkNum));
+		return sendDbBulkRequestAsync(dbBulkRequest, flowId, bulkNum);
     }
 
-    private Collection<UpdateRequest> createUpdateRequests(Map<String, Task> tasksMap) {
-        Collection<UpdateRequest> requests = new ArrayList<>();
+	// Waits only for an in flight permit, so the next bulk is built while this one is on the wire.
+	// Healthy bulks are completed on the callback, failed ones are handed to the retry manager on the indexing threads.
+	private Future<List<BulkResponse>> sendDbBulkRequestAsync(DbBulkRequest dbBulkRequest, String flowId, int bulkNum) {
+		CompletableFuture<List<BulkResponse>> future = new CompletableFuture<>();
+		long startNanos = bulkSizeController.acquire();
+		LOG.debug("Bulk #{} Batch of {} index requests sent to Elasticsearch. Batch size: {} bytes", bulkNum, dbBulkRequest.numOfActions(), dbBulkRequest.estimatedSize());
+		ActionListener<BulkResponse> listener = new ActionListener<BulkResponse>() {
+			@Override
+			public void onResponse(BulkResponse response) {
+				if (response.hasFailures()) {
+					executorService.submit(() -> completeBulk(dbBulkRequest, flowId, bulkNum, startNanos, response, null, future));
+				}
+				else {
+					completeBulk(dbBulkRequest, flowId, bulkNum, startNanos, response, null, future);
+				}
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				executorService.submit(() -> completeBulk(dbBulkRequest, flowId, bulkNum, startNanos, null, e, future));
+			}
+		};
+		try {
+			bulker.bulkAsync(dbBulkRequest, listener);
+		} catch (Throwable t) {
+			listener.onFailure(t instanceof Exception ? (Exception) t : new ElasticsearchException(t));
+		}
+		return future;
+	}
+
+	private void completeBulk(DbBulkRequest dbBulkRequest, String flowId, int bulkNum, long startNanos, BulkResponse response, Exception failure,
+							  CompletableFuture<List<BulkResponse>> future) {
+		MDC.put("id", flowId);
+		List<BulkResponse> bulkResponses = null;
+		try {
+			bulkResponses = retryManager.indexBulkRequestAfterFirstTry(dbBulkRequest, bulkNum, response, failure);
+			future.complete(bulkResponses);
+		} catch (Throwable t) {
+			future.completeExceptionally(t);
+		} finally {
+			bulkSizeController.release(startNanos, bulkResponses);
+			// Healthy bulks are completed on the HTTP IO reactor thread, which must not keep this flow's id
+			MDC.remove("id");
+		}
+	}
+
+    private Collection<DocWriteRequest<?>> createWriteRequests(Map<String, Task> tasksMap) {
+        Collection<DocWriteRequest<?>> requests = new ArrayList<>();
         for (Map.Entry<String, Task> taskEntry : tasksMap.entrySet()) {
             Task task = taskEntry.getValue();
             try {
-				UpdateRequest updateRequest = task.getUpdateRequest(task.getIndex(), taskEntry.getKey());
-				requests.add(updateRequest);
+				DocWriteRequest<?> writeRequest = task.getWriteRequest(task.getIndex(), taskEntry.getKey());
+				requests.add(writeRequest);
 			} catch (Throwable t){
-				LOG.error("Failed while creating update request. task:" + task.toString(), t);
+				LOG.error("Failed while creating write request. task:" + task.toString(), t);
 			}
         }
         return requests;
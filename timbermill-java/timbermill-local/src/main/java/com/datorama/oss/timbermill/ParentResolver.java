@@ -13,7 +13,6 @@ import org.slf4j.LoggerFactory;
 import java.util.*;
 import java.util.stream.Collectors;
 
-import static com.datorama.oss.timbermill.ElasticsearchClient.GSON;
 
 class ParentResolver {
     private static final Logger LOG = LoggerFactory.getLogger(ParentResolver.class);
@@ -26,30 +25,65 @@ class ParentResolver {
         this.cacheHandler = cacheHandler;
     }
 
+    /*
+     * Adopts orphans level by level, starting from the received tasks that can adopt.
+     * Each level costs a single orphans cache pull and a single tasks cache get, and the tasks adopted in a level are the adopting candidates of the next one.
+     */
     Map<String, Task> resolveOrphansReceived() {
-        return resolveOrphans(receivedTasksMap);
+        Map<String, List<String>> receivedOrphansByParent = getReceivedOrphansByParent();
+        Map<String, Task> adoptedTasksMap = Maps.newHashMap();
+
+        Map<String, Task> adoptingTasks = getStartedNotOrphanTasks(receivedTasksMap);
+        Map<String, Task> potentialAdoptingTasks = receivedTasksMap;
+        boolean firstLevel = true;
+        while (!adoptingTasks.isEmpty()) {
+            Map<String, Task> orphansMap = Maps.newHashMap();
+            orphansMap.putAll(findAdoptedOrphansInCache(adoptingTasks.keySet()));
+            if (!firstLevel) {
+                // Received orphans of received parents were already handled during enrichment, only adopted parents can adopt them
+                for (String adoptingId : adoptingTasks.keySet()) {
+                    for (String orphanId : receivedOrphansByParent.getOrDefault(adoptingId, Collections.emptyList())) {
+                        orphansMap.put(orphanId, receivedTasksMap.get(orphanId));
+                    }
+                }
+            }
+            orphansMap.keySet().removeAll(adoptedTasksMap.keySet());
+
+            Map<String, Task> levelAdoptedTasks = getEnrichedAdoptedOrphans(potentialAdoptingTasks, orphansMap);
+            if (!levelAdoptedTasks.isEmpty()) {
+                LOG.debug("Resolving orphans using {} adopted orphans", levelAdoptedTasks.size());
+            }
+            adoptedTasksMap.putAll(levelAdoptedTasks);
+            adoptingTasks = levelAdoptedTasks;
+            potentialAdoptingTasks = levelAdoptedTasks;
+            firstLevel = false;
+        }
+        return adoptedTasksMap;
     }
 
-    private Map<String, Task> resolveOrphans(Map<String, Task> potentialAdoptingTasks) {
-        Set<String> adoptingCandidates = potentialAdoptingTasks.entrySet().stream().filter(entry -> {
+    private static Map<String, Task> getStartedNotOrphanTasks(Map<String, Task> tasks) {
+        return tasks.entrySet().stream().filter(entry -> {
             Task parentIndexedTask = entry.getValue();
             boolean isParentStartedTask = parentIndexedTask.getStatus() == TaskStatus.UNTERMINATED || parentIndexedTask.getStatus() == TaskStatus.SUCCESS || parentIndexedTask.getStatus() == TaskStatus.ERROR;
             boolean isParentNotOrphan = parentIndexedTask.isOrphan() == null || !parentIndexedTask.isOrphan();
             return isParentStartedTask && isParentNotOrphan;
-        }).map(Map.Entry::getKey).collect(Collectors.toSet());
-
-        Map<String, LocalTask> orphansMap = findAdoptedOrphansInCache(adoptingCandidates);
-        return getEnrichedAdoptedOrphans(potentialAdoptingTasks, orphansMap);
+        }).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
     }
 
-    private Map<String, Task> resolveOrphansWithAdoptedOrphans(Map<String, Task> potentialAdoptingTasks) {
-        Set<String> adoptingCandidates = potentialAdoptingTasks.keySet();
-        Map<String, Task> orphansMap = findAdoptedOrphans(adoptingCandidates);
-        return getEnrichedAdoptedOrphans(potentialAdoptingTasks, orphansMap);
+    private Map<String, List<String>> getReceivedOrphansByParent() {
+        Map<String, List<String>> receivedOrphansByParent = Maps.newHashMap();
+        for (Map.Entry<String, Task> entry : receivedTasksMap.entrySet()) {
+            Task task = entry.getValue();
+            if (task.isOrphan() != null && task.isOrphan() && task.getParentId() != null) {
+                receivedOrphansByParent.computeIfAbsent(task.getParentId(), parentId -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+        return receivedOrphansByParent;
     }
 
     private Map<String, Task> getEnrichedAdoptedOrphans(Map<String, Task> potentialAdoptingTasks, Map<String, ? extends Task> orphansMap) {
         Map<String, Task> adoptedTasksMap = Maps.newHashMap();
+        Map<String, ParentProperties> parentPropertiesMap = Maps.newHashMap();
         for (Map.Entry<String, ? extends Task> entry : orphansMap.entrySet()) {
             String adoptedId = entry.getKey();
             Task adoptedTask = entry.getValue();
@@ -57,40 +91,15 @@ class ParentResolver {
                 LOG.warn("Missing adopted task from cache {}", adoptedId);
             } else {
                 adoptedTask.setOrphan(false);
-                populateParentParamsFromAdoptedTask(adoptedTask, potentialAdoptingTasks.get(adoptedTask.getParentId()));
+                ParentProperties parentProperties = parentPropertiesMap.computeIfAbsent(adoptedTask.getParentId(),
+                        parentId -> getParentProperties(potentialAdoptingTasks.get(parentId), null));
+                populateParentParamsFromAdoptedTask(adoptedTask, parentProperties);
                 adoptedTasksMap.put(adoptedId, adoptedTask);
             }
         }
-        if (!adoptedTasksMap.isEmpty()) {
-            LOG.debug("Resolving orphans using {} adopted orphans", adoptedTasksMap.size());
-            Map<String, Task> adoptedTasksNewlyAdoptedTask = resolveOrphansWithAdoptedOrphans(adoptedTasksMap);
-            adoptedTasksMap.putAll(adoptedTasksNewlyAdoptedTask);
-        }
         return adoptedTasksMap;
     }
 
-    private Map<String, Task> findAdoptedOrphans(Set<String> adoptingCandidates) {
-        Map<String, LocalTask> adoptedOrphansTasksFromCache = findAdoptedOrphansInCache(adoptingCandidates);
-        Map<String, Task> adoptedOrphansReceivedTasks = findAdoptedOrphansInReceivedTasks(adoptingCandidates);
-
-        Map<String, Task> orphansMap = Maps.newHashMap();
-        orphansMap.putAll(adoptedOrphansTasksFromCache);
-        orphansMap.putAll(adoptedOrphansReceivedTasks);
-
-        return orphansMap;
-    }
-
-    private Map<String, Task> findAdoptedOrphansInReceivedTasks(Set<String> adoptingCandidates) {
-        Map<String, Task> retMap = Maps.newHashMap();
-        for (Map.Entry<String, Task> entry : receivedTasksMap.entrySet()) {
-            Task task = entry.getValue();
-            if (task.isOrphan() != null && task.isOrphan() && adoptingCandidates.contains(task.getParentId())){
-                retMap.put(entry.getKey(), task);
-            }
-        }
-        return retMap;
-    }
-
     private Map<String, LocalTask> findAdoptedOrphansInCache(Set<String> adoptingCandidates) {
         Map<String, List<String>> adoptedOrphansFromCache = cacheHandler.logPullFromOrphansCache(adoptingCandidates, "resolve_orphans");
         if (adoptedOrphansFromCache.isEmpty()){
@@ -102,14 +111,12 @@ class ParentResolver {
         }
     }
 
-    private static void populateParentParamsFromAdoptedTask(Task task, Task parentIndexedTask) {
-        ParentProperties parentProperties = getParentProperties(parentIndexedTask, null);
-
+    private static void populateParentParamsFromAdoptedTask(Task task, ParentProperties parentProperties) {
         if (StringUtils.isEmpty(parentProperties.getPrimaryId()) && parentProperties.getParentPath() != null && !parentProperties.getParentPath().isEmpty()){
-            LOG.debug("populateParentParamsFromAdoptedTask primary missing. parentIndexedTask {}", GSON.toJson(parentIndexedTask));
+            LOG.debug("populateParentParamsFromAdoptedTask primary missing. parent task {}", task.getParentId());
         }
 
-        List<String> parentsPath = getParentPath(parentProperties);
+        List<String> parentsPath = parentProperties.getChildrenParentsPath();
         if(!parentsPath.isEmpty()) {
             task.setParentsPath(parentsPath);
         }
@@ -123,14 +130,13 @@ class ParentResolver {
         }
     }
 
-    static void populateParentParams(Event event, Task parentIndexedTask, Collection<Event> parentCurrentEvent) {
-        ParentProperties parentProperties = getParentProperties(parentIndexedTask, parentCurrentEvent);
-
+    // The parent properties may be shared by all of the parent's children in a batch, they are only read here
+    static void populateParentParams(Event event, ParentProperties parentProperties) {
         if (StringUtils.isEmpty(parentProperties.getPrimaryId()) && parentProperties.getParentPath() != null && !parentProperties.getParentPath().isEmpty()){
-            LOG.debug("populateParentParams primary missing. parentIndexedTask {} parentCurrentEvent {}", GSON.toJson(parentIndexedTask),  GSON.toJson(parentCurrentEvent));
+            LOG.debug("populateParentParams primary missing. parent task {}", event.getParentId());
         }
 
-        List<String> parentsPath = getParentPath(parentProperties);
+        List<String> parentsPath = parentProperties.getChildrenParentsPath();
         if(!parentsPath.isEmpty()) {
             event.setParentsPath(parentsPath);
         }
@@ -144,20 +150,7 @@ class ParentResolver {
         }
     }
 
-    private static List<String> getParentPath(ParentProperties parentProperties) {
-        List<String> parentsPath = new ArrayList<>();
-        Collection<String> parentParentsPath = parentProperties.getParentPath();
-        if ((parentParentsPath != null) && !parentParentsPath.isEmpty()) {
-            parentsPath.addAll(parentParentsPath);
-        }
-        String parentName = parentProperties.getParentName();
-        if (parentName != null) {
-            parentsPath.add(parentName);
-        }
-        return parentsPath;
-    }
-
-    private static ParentProperties getParentProperties(Task parentIndexedTask, Collection<Event> parentCurrentEvent) {
+    static ParentProperties getParentProperties(Task parentIndexedTask, Collection<Event> parentCurrentEvent) {
         Map<String, String> context = Maps.newHashMap();
         String primaryId = null;
         Collection<String> parentPath = null;
@@ -214,12 +207,26 @@ class ParentResolver {
         private final Map<String, String> context;
         private final Collection<String> parentPath;
         private final String parentName;
+        private final List<String> childrenParentsPath;
 
         ParentProperties(String primaryId, Map<String, String> context, Collection<String> parentPath, String parentName) {
             this.primaryId = primaryId;
             this.context = context;
             this.parentPath = parentPath;
             this.parentName = parentName;
+            this.childrenParentsPath = buildChildrenParentsPath(parentPath, parentName);
+        }
+
+        // Built once per parent and set as is on all of its children, so it is read-only
+        private static List<String> buildChildrenParentsPath(Collection<String> parentPath, String parentName) {
+            List<String> parentsPath = new ArrayList<>();
+            if ((parentPath != null) && !parentPath.isEmpty()) {
+                parentsPath.addAll(parentPath);
+            }
+            if (parentName != null) {
+                parentsPath.add(parentName);
+            }
+            return Collections.unmodifiableList(parentsPath);
         }
 
         String getPrimaryId() {
@@ -238,5 +245,9 @@ class ParentResolver {
             return parentName;
         }
 
+        List<String> getChildrenParentsPath() {
+            return childrenParentsPath;
+        }
+
     }
 }
@@ -0,0 +1,76 @@
+package com.datorama.oss.timbermill;
+
+import com.datorama.oss.timbermill.unit.Event;
+
+import java.util.*;
+
+/*
+ * Parent/child forest of a batch's start events, kept as int-indexed arrays.
+ * Events are ordered so that every parent comes before its children, starting from events whose parent is not in the batch.
+ * Events that are part of a parent cycle are unreachable from any root and are left out.
+ */
+class StartEventsForest {
+
+    private final Event[] events;
+    private final int[] topologicalOrder;
+    private final int orderedAmount;
+
+    StartEventsForest(Map<String, Event> startEventsById) {
+        int size = startEventsById.size();
+        events = startEventsById.values().toArray(new Event[0]);
+        Map<String, Integer> idToIndex = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            idToIndex.put(events[i].getTaskId(), i);
+        }
+
+        // Parent index per event and children lists flattened by parent (counting sort)
+        int[] parents = new int[size];
+        int[] childrenStart = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            String parentId = events[i].getParentId();
+            Integer parentIndex = parentId == null ? null : idToIndex.get(parentId);
+            parents[i] = parentIndex == null ? -1 : parentIndex;
+            if (parents[i] >= 0) {
+                childrenStart[parents[i] + 1]++;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            childrenStart[i + 1] += childrenStart[i];
+        }
+        int[] children = new int[childrenStart[size]];
+        int[] nextChildSlot = Arrays.copyOf(childrenStart, size);
+        for (int i = 0; i < size; i++) {
+            if (parents[i] >= 0) {
+                children[nextChildSlot[parents[i]]++] = i;
+            }
+        }
+
+        // Breadth first from the roots, the order array doubles as the queue
+        topologicalOrder = new int[size];
+        int tail = 0;
+        for (int i = 0; i < size; i++) {
+            if (parents[i] < 0) {
+                topologicalOrder[tail++] = i;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int current = topologicalOrder[head];
+            for (int c = childrenStart[current]; c < childrenStart[current + 1]; c++) {
+                topologicalOrder[tail++] = children[c];
+            }
+        }
+        orderedAmount = tail;
+    }
+
+    List<Event> getEventsInTopologicalOrder() {
+        List<Event> ret = new ArrayList<>(orderedAmount);
+        for (int i = 0; i < orderedAmount; i++) {
+            ret.add(events[topologicalOrder[i]]);
+        }
+        return ret;
+    }
+
+    int getUnreachableAmount() {
+        return events.length - orderedAmount;
+    }
+}
@@ -4,24 +4,25 @@ import com.datorama.oss.timbermill.common.Constants;
 import com.datorama.oss.timbermill.common.ElasticsearchUtil;
 import com.datorama.oss.timbermill.common.KamonConstants;
 import com.datorama.oss.timbermill.common.cache.AbstractCacheHandler;
+import com.datorama.oss.timbermill.common.cache.CacheLock;
+import com.datorama.oss.timbermill.common.cache.MissingParentsCache;
 import com.datorama.oss.timbermill.plugins.PluginsConfig;
-import com.datorama.oss.timbermill.plugins.TaskLogPlugin;
+import com.datorama.oss.timbermill.plugins.PluginsExecutor;
 import com.datorama.oss.timbermill.unit.*;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import kamon.metric.Timer;
-import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.logging.log4j.ThreadContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.swing.tree.DefaultMutableTreeNode;
 import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
 import static com.datorama.oss.timbermill.ElasticsearchClient.GSON;
+import static com.datorama.oss.timbermill.ParentResolver.getParentProperties;
 import static com.datorama.oss.timbermill.ParentResolver.populateParentParams;
 
 public class TaskIndexer {
@@ -29,17 +30,31 @@ public class TaskIndexer {
     private static final Logger LOG = LoggerFactory.getLogger(TaskIndexer.class);
 
     private final ElasticsearchClient es;
-    private final Collection<TaskLogPlugin> logPlugins;
+    private final PluginsExecutor pluginsExecutor;
+    private final TaskRollups taskRollups;
+    private final ChildrenFanOutLimiter childrenFanOutLimiter;
+    private final int duplicateStartCheckSampleRate;
+    private final DeferredParentsResolver deferredParentsResolver;
+    private final MissingParentsCache missingParentsCache;
+    private long batchesAmount = 0;
     private AbstractCacheHandler cacheHandler;
     private long daysRotation;
     private String timbermillVersion;
 
-    public TaskIndexer(String pluginsJson, Integer daysRotation, ElasticsearchClient es, String timbermillVersion, AbstractCacheHandler cacheHandler) {
+    public TaskIndexer(String pluginsJson, Integer daysRotation, ElasticsearchClient es, String timbermillVersion, AbstractCacheHandler cacheHandler,
+                       int pluginsParallelism, long pluginTimeBudgetMillis, String rollupTaskNames, long rollupWindowSeconds, int rollupSampleRate,
+                       int maxChildrenPerParent, int duplicateStartCheckSampleRate, boolean deferredParentsResolution,
+                       long missingParentsCacheTtlSeconds) {
         this.daysRotation = calculateDaysRotation(daysRotation);
-        this.logPlugins = PluginsConfig.initPluginsFromJson(pluginsJson);
+        this.pluginsExecutor = new PluginsExecutor(PluginsConfig.compilePluginsFromJson(pluginsJson), pluginsParallelism, pluginTimeBudgetMillis);
+        this.taskRollups = TaskRollups.fromConfig(rollupTaskNames, rollupWindowSeconds, rollupSampleRate, this.daysRotation);
+        this.childrenFanOutLimiter = new ChildrenFanOutLimiter(maxChildrenPerParent, this.daysRotation);
+        this.duplicateStartCheckSampleRate = duplicateStartCheckSampleRate;
         this.es = es;
         this.timbermillVersion = timbermillVersion;
         this.cacheHandler = cacheHandler;
+        this.missingParentsCache = missingParentsCacheTtlSeconds > 0 ? new MissingParentsCache(missingParentsCacheTtlSeconds) : null;
+        this.deferredParentsResolver = deferredParentsResolution ? new DeferredParentsResolver(es, missingParentsCache) : null;
     }
 
     private static int calculateDaysRotation(int daysRotationParam) {
@@ -47,6 +62,14 @@ public class TaskIndexer {
     }
 
     public void close() {
+        pluginsExecutor.close();
+        if (taskRollups.isEnabled()) {
+            indexRollups(taskRollups.flushAll());
+        }
+        if (deferredParentsResolver != null) {
+            deferredParentsResolver.close();
+            adoptDeferredParentsOrphans();
+        }
         es.close();
         cacheHandler.close();
     }
@@ -59,87 +82,149 @@ public class TaskIndexer {
         ZonedDateTime taskIndexerStartTime = ZonedDateTime.now();
         LOG.info("{} events to be handled in current batch", events.size());
 
-        Collection<String> heartbeatEvents = new HashSet<>();
-        Collection<Event> timbermillEvents = new LinkedHashSet<>();
+        if (deferredParentsResolver != null) {
+            adoptDeferredParentsOrphans();
+        }
 
-        events.forEach(e -> {
-            if (e.getName() != null && e.getName().equals(Constants.HEARTBEAT_TASK)){
-                String heartbeatJson = GSON.toJson(new HeartbeatTask(e, daysRotation));
-                heartbeatEvents.add(heartbeatJson);
-            }
-            else{
-                if (e.getTaskId() == null){
-                    LOG.warn("Task ID is null for event {}", GSON.toJson(e));
-                }
-                else {
-                    e.fixErrors();
-                    e.replaceAllFieldsWithDots();
-                    e.trimAllStrings();
-                    timbermillEvents.add(e);
-                }
-            }
-        });
+        Collection<Event> timbermillEvents = new LinkedHashSet<>(events);
+        if (shouldCheckDuplicateStartEvents()) {
+            logErrorInEventsMap(timbermillEvents.stream().collect(Collectors.groupingBy(Event::getTaskId)), "retrieveAndIndex");
+        }
 
-        if (!heartbeatEvents.isEmpty()) {
-            this.es.indexMetaDataTasks(env, heartbeatEvents);
+        // Tasks that are summarized instead of indexed, they are still cached so their children in later batches are enriched
+        Collection<Event> cacheOnlyEvents = new ArrayList<>();
+        if (taskRollups.isEnabled()) {
+            rollUpTasks(env, timbermillEvents, cacheOnlyEvents);
         }
 
-        if (!timbermillEvents.isEmpty()) {
-            int previouslyIndexedParentSize = handleTimbermillEvents(env, timbermillEvents);
+        if (childrenFanOutLimiter.isEnabled()) {
+            foldChildren(env, timbermillEvents, cacheOnlyEvents);
+        }
+
+        if (!timbermillEvents.isEmpty() || !cacheOnlyEvents.isEmpty()) {
+            int previouslyIndexedParentSize = handleTimbermillEvents(env, timbermillEvents, cacheOnlyEvents);
             reportBatchMetrics(env, previouslyIndexedParentSize, taskIndexerStartTime, timbermillEvents.size());
         }
         start.stop();
         LOG.info("#### Batch End ####");
     }
 
-    private int handleTimbermillEvents(String env, Collection<Event> timbermillEvents) {
-        applyPlugins(timbermillEvents, env);
+    /*
+     * Called from the ingesting threads and on events replayed from persistence before the event is queued, so the indexing thread only gets normalized events.
+     * Heartbeats are sent to the metadata queue from here and events without a task id are dropped, both return false.
+     */
+    public boolean prepareEvent(Event e) {
+        if (e.getEnv() == null){
+            e.setEnv(Constants.DEFAULT);
+        }
+        if (e.getName() != null && e.getName().equals(Constants.HEARTBEAT_TASK)){
+            String env = e.getEnv().toLowerCase();
+            ElasticsearchUtil.getEnvSet().add(env);
+            es.indexMetaDataTasks(env, Collections.singletonList(GSON.toJson(new HeartbeatTask(e, daysRotation))));
+            return false;
+        }
+        if (e.getTaskId() == null){
+            LOG.warn("Task ID is null for event {}", GSON.toJson(e));
+            return false;
+        }
+        e.fixErrors();
+        e.replaceAllFieldsWithDots();
+        e.trimAllStrings();
+        return true;
+    }
 
-        Map<String, DefaultMutableTreeNode> nodesMap = Maps.newHashMap();
-        Set<String> startEventsIds = Sets.newHashSet();
+    private boolean shouldCheckDuplicateStartEvents() {
+        return duplicateStartCheckSampleRate > 0 && batchesAmount++ % duplicateStartCheckSampleRate == 0;
+    }
+
+    private void rollUpTasks(String env, Collection<Event> timbermillEvents, Collection<Event> cacheOnlyEvents) {
+        int rolledUpAmount = taskRollups.rollUp(timbermillEvents, env, cacheOnlyEvents);
+        if (rolledUpAmount > 0) {
+            LOG.info("{} tasks were rolled up", rolledUpAmount);
+            KamonConstants.TASKS_ROLLED_UP_HISTOGRAM.withoutTags().record(rolledUpAmount);
+        }
+        indexRollups(taskRollups.flushEndedWindows(System.currentTimeMillis()));
+    }
+
+    // Summaries are the only record of the tasks they rolled up, so they are indexed like tasks, with retries and persistence
+    private void indexRollups(Map<String, List<RollupTask>> rollupsByEnv) {
+        Map<String, Task> idToRollupTask = Maps.newHashMap();
+        rollupsByEnv.forEach((rollupEnv, rollups) -> {
+            String index = es.getCurrentIndex(rollupEnv);
+            for (RollupTask rollup : rollups) {
+                rollup.setIndex(index);
+                idToRollupTask.put(rollup.getRollupId(), rollup);
+            }
+        });
+        if (!idToRollupTask.isEmpty()) {
+            es.indexPipelined(idToRollupTask);
+        }
+    }
+
+    private void foldChildren(String env, Collection<Event> timbermillEvents, Collection<Event> cacheOnlyEvents) {
+        Map<String, FoldedChildrenTask> foldedChildrenTasks = childrenFanOutLimiter.fold(timbermillEvents, env, cacheHandler, cacheOnlyEvents);
+        if (!foldedChildrenTasks.isEmpty()) {
+            // The aggregates are the only record of the folded children, so they are indexed like tasks, with retries and persistence
+            Map<String, Task> idToFoldedChildrenTask = Maps.newHashMap();
+            foldedChildrenTasks.forEach((id, foldedChildrenTask) -> {
+                if (foldedChildrenTask.getIndex() == null) {
+                    foldedChildrenTask.setIndex(es.getCurrentIndex(env));
+                }
+                idToFoldedChildrenTask.put(id, foldedChildrenTask);
+            });
+            es.indexPipelined(idToFoldedChildrenTask);
+            LOG.info("Children were folded into {} parents' aggregates", foldedChildrenTasks.size());
+        }
+    }
+
+    private int handleTimbermillEvents(String env, Collection<Event> timbermillEvents, Collection<Event> cacheOnlyEvents) {
+        applyPlugins(timbermillEvents);
+
+        Map<String, Event> startEventsMap = Maps.newLinkedHashMap();
         Set<String> parentIds = Sets.newHashSet();
         Map<String, List<Event>> eventsMap = Maps.newHashMap();
-        populateCollections(timbermillEvents, nodesMap, startEventsIds, parentIds, eventsMap);
-        connectNodesByParentId(nodesMap);
+        populateCollections(timbermillEvents, startEventsMap, parentIds, eventsMap);
+        populateCollections(cacheOnlyEvents, startEventsMap, parentIds, eventsMap);
+        StartEventsForest startEventsForest = new StartEventsForest(startEventsMap);
+        if (missingParentsCache != null) {
+            missingParentsCache.invalidate(startEventsMap.keySet());
+        }
 
-        Set<String> missingParentsIds = parentIds.stream().filter(id -> !startEventsIds.contains(id)).collect(Collectors.toSet());
+        Set<String> missingParentsIds = parentIds.stream().filter(id -> !startEventsMap.containsKey(id)).collect(Collectors.toSet());
 
         Map<String, Task> tasksMap;
         Map<String, Task> previouslyIndexedParentTasks;
 
-        String alias = es.createTimbermillAlias(env);
+        String index = es.getCurrentIndex(env);
 
-        String index;
-        if (!alias.endsWith(ElasticsearchUtil.getIndexSerial(1))){
-            index = es.rolloverIndex(alias);
-        }
-        else{
-            index = alias;
-        }
-
-        cacheHandler.lock();
+        Set<String> lockedTasksIds = Sets.newHashSet(eventsMap.keySet());
+        lockedTasksIds.addAll(parentIds);
+        CacheLock cacheLock = cacheHandler.lock(lockedTasksIds);
         try {
             previouslyIndexedParentTasks = getMissingParents(missingParentsIds, env);
-            tasksMap = createEnrichedTasks(nodesMap, eventsMap, previouslyIndexedParentTasks, index);
-            resolveOrphansFromCache(tasksMap);
+            tasksMap = createEnrichedTasks(startEventsForest, eventsMap, previouslyIndexedParentTasks, index);
+            resolveOrphansFromCache(tasksMap, cacheLock);
             cacheTasks(tasksMap);
+            cacheHandler.markAsParents(parentIds);
             cacheOrphans(tasksMap);
         } finally {
-            cacheHandler.release();
+            cacheHandler.release(cacheLock);
         }
 
-
-        es.index(tasksMap);
-        LOG.info("{} tasks were indexed to elasticsearch", tasksMap.size());
+        cacheOnlyEvents.forEach(event -> tasksMap.remove(event.getTaskId()));
+        es.indexPipelined(tasksMap);
+        LOG.info("{} tasks were sent to elasticsearch", tasksMap.size());
+        if (deferredParentsResolver != null && !missingParentsIds.isEmpty()) {
+            // Their adoption is indexed after the orphans' own bulks are done, so it's never overridden by their own indexing
+            deferredParentsResolver.defer(env, missingParentsIds);
+        }
         return previouslyIndexedParentTasks.size();
     }
 
-    private void resolveOrphansFromCache(Map<String, Task> tasksMap) {
+    private void resolveOrphansFromCache(Map<String, Task> tasksMap, CacheLock cacheLock) {
         Timer.Started start = KamonConstants.ORPHANS_JOB_LATENCY.withoutTags().start();
 
-        ParentResolver resolver = new ParentResolver(tasksMap, cacheHandler);
-        Map<String, Task> adoptedTasksMap = resolver.resolveOrphansReceived();
-
+        Map<String, Task> adoptedTasksMap = adoptOrphans(tasksMap, cacheLock);
         for (Map.Entry<String, Task> adoptedEntry : adoptedTasksMap.entrySet()) {
             String adoptedId = adoptedEntry.getKey();
             Task adoptedTask = adoptedEntry.getValue();
@@ -158,6 +243,45 @@ public class TaskIndexer {
         start.stop();
     }
 
+    // Parents that were found in Elasticsearch in the background, they are cached and their orphans are adopted here so the caches have a single writer
+    private void adoptDeferredParentsOrphans() {
+        Map<String, Task> parents = deferredParentsResolver.drainFoundParents();
+        if (parents.isEmpty()) {
+            return;
+        }
+
+        Map<String, Task> adoptedTasksMap;
+        CacheLock cacheLock = cacheHandler.lock(parents.keySet());
+        try {
+            // Later children of these parents are enriched from the cache instead of being indexed as orphans again
+            cacheTasks(parents);
+            adoptedTasksMap = adoptOrphans(parents, cacheLock);
+            cacheTasks(adoptedTasksMap);
+        } finally {
+            cacheHandler.release(cacheLock);
+        }
+
+        KamonConstants.ORPHANS_ADOPTED_HISTOGRAM.withoutTags().record(adoptedTasksMap.size());
+        if (!adoptedTasksMap.isEmpty()) {
+            es.indexPipelined(adoptedTasksMap);
+            LOG.info("{} orphans of {} deferred parents were adopted", adoptedTasksMap.size(), parents.size());
+        }
+    }
+
+    private Map<String, Task> adoptOrphans(Map<String, Task> parentsMap, CacheLock cacheLock) {
+        ParentResolver resolver = new ParentResolver(parentsMap, cacheHandler);
+        Map<String, Task> adoptedTasksMap = resolver.resolveOrphansReceived();
+
+        // Adopted tasks that weren't received are written to the cache as well, so their entries must be locked first
+        Set<String> adoptedFromCache = adoptedTasksMap.keySet().stream().filter(id -> !parentsMap.containsKey(id)).collect(Collectors.toSet());
+        Set<String> unlockedAdoptedIds = cacheHandler.extend(cacheLock, adoptedFromCache);
+        if (!unlockedAdoptedIds.isEmpty()) {
+            LOG.warn("{} orphans couldn't be locked and were left to be adopted later", unlockedAdoptedIds.size());
+            adoptedTasksMap.keySet().removeAll(unlockedAdoptedIds);
+        }
+        return adoptedTasksMap;
+    }
+
     private void cacheOrphans(Map<String, Task> tasksMap) {
         Map<String, List<String>> parentToOrphansMap = Maps.newHashMap();
 
@@ -199,6 +323,7 @@ public class TaskIndexer {
             LocalTask localTask = new LocalTask(task);
             String id = entry.getKey();
             Task cachedTask = idToTaskMap.get(id);
+            task.setFirstWrite(cachedTask == null);
             if (cachedTask != null) {
                 localTask.mergeTask(cachedTask, id);
                 localTask.setIndex(cachedTask.getIndex());
@@ -233,7 +358,17 @@ public class TaskIndexer {
         }
 
         parentIds.removeAll(previouslyIndexedParentTasks.keySet());
-        if (!parentIds.isEmpty()) {
+        if (missingParentsCache != null) {
+            Set<String> knownMissingParentsIds = missingParentsCache.getMissing(parentIds);
+            if (!knownMissingParentsIds.isEmpty()) {
+                LOG.info("{} missing parents are known to be missing and were not looked up", knownMissingParentsIds.size());
+                parentIds.removeAll(knownMissingParentsIds);
+            }
+        }
+        if (!parentIds.isEmpty() && deferredParentsResolver != null) {
+            LOG.info("{} missing parents were deferred to a background lookup", parentIds.size());
+        }
+        else if (!parentIds.isEmpty()) {
             Map<String, Task> fromEs = es.getMissingParents(parentIds, env);
             for (Task value : fromEs.values()) {
                 if (value.getPrimaryId() == null && value.getParentsPath() != null && !value.getParentsPath().isEmpty()){
@@ -241,6 +376,9 @@ public class TaskIndexer {
                 }
             }
             previouslyIndexedParentTasks.putAll(fromEs);
+            if (missingParentsCache != null) {
+                missingParentsCache.putMissing(parentIds.stream().filter(id -> !fromEs.containsKey(id)).collect(Collectors.toSet()));
+            }
 
             if (!fromEs.isEmpty()) {
                 LOG.info("Fetched {} missing parents from Elasticsearch", fromEs.size());
@@ -268,13 +406,10 @@ public class TaskIndexer {
         es.indexMetaDataTasks(env, Lists.newArrayList(GSON.toJson(indexEvent)));
     }
 
-    private void populateCollections(Collection<Event> timbermillEvents, Map<String, DefaultMutableTreeNode> nodesMap, Set<String> startEventsIds, Set<String> parentIds,
-            Map<String, List<Event>> eventsMap) {
+    private void populateCollections(Collection<Event> timbermillEvents, Map<String, Event> startEventsMap, Set<String> parentIds, Map<String, List<Event>> eventsMap) {
         timbermillEvents.forEach(event -> {
             if (event.isStartEvent()){
-                startEventsIds.add(event.getTaskId());
-
-                nodesMap.put(event.getTaskId(), new DefaultMutableTreeNode(event));
+                startEventsMap.put(event.getTaskId(), event);
             }
             if (event.getParentId() != null){
                 parentIds.add(event.getParentId());
@@ -290,23 +425,9 @@ public class TaskIndexer {
         });
     }
 
-    private void connectNodesByParentId(Map<String, DefaultMutableTreeNode> nodesMap) {
-        for (DefaultMutableTreeNode treeNode : nodesMap.values()) {
-
-            Event startEvent = (Event) treeNode.getUserObject();
-            String parentId = startEvent.getParentId();
-            if (parentId != null) {
-                DefaultMutableTreeNode parentNode = nodesMap.get(parentId);
-                if (parentNode != null) {
-                    parentNode.add(treeNode);
-                }
-            }
-        }
-    }
-
-    private Map<String, Task> createEnrichedTasks(Map<String, DefaultMutableTreeNode> nodesMap, Map<String, List<Event>> eventsMap,
+    private Map<String, Task> createEnrichedTasks(StartEventsForest startEventsForest, Map<String, List<Event>> eventsMap,
                                                   Map<String, Task> previouslyIndexedParentTasks, String index) {
-        enrichStartEventsByOrder(nodesMap.values(), eventsMap, previouslyIndexedParentTasks);
+        enrichStartEventsByOrder(startEventsForest, eventsMap, previouslyIndexedParentTasks);
         return getTasksFromEvents(eventsMap, index);
     }
 
@@ -319,19 +440,18 @@ public class TaskIndexer {
         return tasksMap;
     }
 
-    private void enrichStartEventsByOrder(Collection<DefaultMutableTreeNode> nodes, Map<String, List<Event>> eventsMap, Map<String, Task> previouslyIndexedTasks) {
+    static void enrichStartEventsByOrder(StartEventsForest startEventsForest, Map<String, List<Event>> eventsMap, Map<String, Task> previouslyIndexedTasks) {
         /*
          * Compute origins and down merge parameters from parent
          */
-        for (DefaultMutableTreeNode node : nodes) {
-            if (node.isRoot()) {
-                Enumeration enumeration = node.breadthFirstEnumeration();
-                while (enumeration.hasMoreElements()) {
-                    DefaultMutableTreeNode curr = (DefaultMutableTreeNode) enumeration.nextElement();
-                    Event startEvent = (Event) curr.getUserObject();
-                    enrichStartEvent(eventsMap, previouslyIndexedTasks, startEvent);
-                }
-            }
+        // Parents are enriched before their children, so a parent's properties are final once resolved and are shared by all of its children
+        Map<String, ParentResolver.ParentProperties> parentPropertiesMap = Maps.newHashMap();
+        for (Event startEvent : startEventsForest.getEventsInTopologicalOrder()) {
+            enrichStartEvent(eventsMap, previouslyIndexedTasks, parentPropertiesMap, startEvent);
+        }
+        int unreachable = startEventsForest.getUnreachableAmount();
+        if (unreachable > 0) {
+            LOG.warn("{} start events are part of a parent cycle and were not enriched", unreachable);
         }
     }
 
@@ -344,7 +464,8 @@ public class TaskIndexer {
         }
     }
 
-    private void enrichStartEvent(Map<String, List<Event>> eventsMap, Map<String, Task> previouslyIndexedTasks, Event startEvent) {
+    private static void enrichStartEvent(Map<String, List<Event>> eventsMap, Map<String, Task> previouslyIndexedTasks, Map<String, ParentResolver.ParentProperties> parentPropertiesMap,
+            Event startEvent) {
         String parentId = startEvent.getParentId();
         if (parentId != null) {
             if (isOrphan(startEvent, previouslyIndexedTasks, eventsMap)){
@@ -352,7 +473,9 @@ public class TaskIndexer {
                 startEvent.setPrimaryId(null);
             }
             else {
-                populateParentParams(startEvent, previouslyIndexedTasks.get(parentId), eventsMap.get(parentId));
+                ParentResolver.ParentProperties parentProperties = parentPropertiesMap.computeIfAbsent(parentId,
+                        id -> getParentProperties(previouslyIndexedTasks.get(id), eventsMap.get(id)));
+                populateParentParams(startEvent, parentProperties);
             }
         }
         else{
@@ -360,7 +483,7 @@ public class TaskIndexer {
         }
     }
 
-    private boolean isOrphan(Event event, Map<String, Task> previouslyIndexedTasks, Map<String, List<Event>> eventsMap) {
+    private static boolean isOrphan(Event event, Map<String, Task> previouslyIndexedTasks, Map<String, List<Event>> eventsMap) {
         String parentId = event.getParentId();
         if (parentId == null) {
             return false;
@@ -390,25 +513,9 @@ public class TaskIndexer {
         }
     }
 
-    private void applyPlugins(Collection<Event> events, String env) {
+    private void applyPlugins(Collection<Event> events) {
         try {
-            for (TaskLogPlugin plugin : logPlugins) {
-                ZonedDateTime startTime = ZonedDateTime.now();
-                TaskStatus status;
-                String exception = null;
-                try {
-                    plugin.apply(events);
-                    status = TaskStatus.SUCCESS;
-                } catch (Exception ex) {
-                    exception = ExceptionUtils.getStackTrace(ex);
-                    status = TaskStatus.ERROR;
-                    LOG.error("error in plugin" + plugin, ex);
-                }
-                ZonedDateTime endTime = ZonedDateTime.now();
-                long duration = ElasticsearchUtil.getTimesDuration(startTime, endTime);
-                PluginApplierTask pluginApplierTask = new PluginApplierTask(env, plugin.getName(), plugin.getClass().getSimpleName(), status, exception, endTime, duration, startTime, daysRotation);
-                es.indexMetaDataTasks(env, Lists.newArrayList(GSON.toJson(pluginApplierTask)));
-            }
+            pluginsExecutor.apply(events);
         } catch (Throwable t) {
             LOG.error("Error running plugins", t);
         }
@@ -0,0 +1,222 @@
+package com.datorama.oss.timbermill;
+
+import com.datorama.oss.timbermill.unit.*;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/*
+ * Rolls up high frequency tasks into per time window summaries instead of indexing each of them.
+ * Windows are by the tasks' start time and are flushed by event time, once the latest task end seen passed their end by a window,
+ * or by the server clock when no more events arrive. Late tasks and other servers' windows are merged into the same summary document.
+ * Only tasks of the configured names that completed within the batch (a spot event, or a start and an end event) are rolled up,
+ * tasks that other events in the batch point to as their parent are always indexed.
+ * Rolled up tasks are never indexed, but their events are handed back to be cached, so children that arrive in later batches are still enriched.
+ * Every sampleRate-th rolled up task is also kept in the batch and indexed as usual.
+ */
+class TaskRollups {
+
+    private static final int MAX_DISTINCT_VALUES_PER_STRING = 100;
+    private static final int TOP_VALUES = 5;
+    private static final String OTHER_VALUES = "_other";
+    private static final int IDLE_FLUSH_WINDOWS = 5;
+
+    private final Set<String> taskNames;
+    private final long windowMillis;
+    private final int sampleRate;
+    private final long daysRotation;
+    private final Map<WindowKey, RollupWindow> windows = new HashMap<>();
+    private long rolledUpAmount = 0;
+    private long watermarkMillis = Long.MIN_VALUE;
+
+    TaskRollups(Collection<String> taskNames, long windowSeconds, int sampleRate, long daysRotation) {
+        if (!taskNames.isEmpty() && windowSeconds < 1) {
+            throw new RuntimeException("Rollup window seconds property should be larger than 0");
+        }
+        this.taskNames = new HashSet<>(taskNames);
+        this.windowMillis = windowSeconds * 1000;
+        this.sampleRate = sampleRate;
+        this.daysRotation = daysRotation;
+    }
+
+    static TaskRollups fromConfig(String taskNames, long windowSeconds, int sampleRate, long daysRotation) {
+        List<String> names = taskNames == null ? Collections.emptyList() : Arrays.stream(taskNames.split(","))
+                .map(String::trim).filter(name -> !name.isEmpty()).collect(Collectors.toList());
+        return new TaskRollups(names, windowSeconds, sampleRate, daysRotation);
+    }
+
+    boolean isEnabled() {
+        return !taskNames.isEmpty();
+    }
+
+    // Moves the rolled up tasks' events from the batch to rolledUpEvents, returns the amount of tasks that were rolled up
+    int rollUp(Collection<Event> events, String env, Collection<Event> rolledUpEvents) {
+        Map<String, CompletedTask> completedTasks = CompletedTask.findCompletedTasks(events, event -> taskNames.contains(event.getName()));
+        Set<String> rolledUpIds = new HashSet<>();
+        for (CompletedTask completedTask : completedTasks.values()) {
+            windowOf(env, completedTask).add(completedTask);
+            watermarkMillis = Math.max(watermarkMillis, completedTask.getStartMillis() + completedTask.getDuration());
+            rolledUpAmount++;
+            if (sampleRate <= 0 || rolledUpAmount % sampleRate != 0) {
+                rolledUpIds.add(completedTask.getTaskId());
+            }
+        }
+        if (!rolledUpIds.isEmpty()) {
+            CompletedTask.moveEvents(events, rolledUpIds, rolledUpEvents);
+        }
+        return rolledUpIds.size();
+    }
+
+    // Summaries of the windows that ended a window before the watermark, or long enough before the given time, by env
+    Map<String, List<RollupTask>> flushEndedWindows(long nowMillis) {
+        return flush(key -> {
+            long windowEnd = key.windowStart + windowMillis;
+            return windowEnd + windowMillis <= watermarkMillis || windowEnd + IDLE_FLUSH_WINDOWS * windowMillis <= nowMillis;
+        });
+    }
+
+    Map<String, List<RollupTask>> flushAll() {
+        return flush(key -> true);
+    }
+
+    private Map<String, List<RollupTask>> flush(Predicate<WindowKey> shouldFlush) {
+        Map<String, List<RollupTask>> summariesByEnv = new HashMap<>();
+        Iterator<Map.Entry<WindowKey, RollupWindow>> iterator = windows.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<WindowKey, RollupWindow> entry = iterator.next();
+            WindowKey key = entry.getKey();
+            if (shouldFlush.test(key)) {
+                summariesByEnv.computeIfAbsent(key.env, env -> new ArrayList<>()).add(entry.getValue().toSummary(key));
+                iterator.remove();
+            }
+        }
+        return summariesByEnv;
+    }
+
+    private RollupWindow windowOf(String env, CompletedTask completedTask) {
+        long windowStart = completedTask.getStartMillis() - Math.floorMod(completedTask.getStartMillis(), windowMillis);
+        return windows.computeIfAbsent(new WindowKey(env, completedTask.getName(), windowStart), key -> new RollupWindow());
+    }
+
+    private RollupTask summaryOf(WindowKey key, RollupWindow window) {
+        ZonedDateTime windowStart = ZonedDateTime.ofInstant(Instant.ofEpochMilli(key.windowStart), ZoneOffset.UTC);
+        RollupTask rollupTask = new RollupTask(key.env, key.name, windowStart, windowStart.plusNanos(windowMillis * 1000000), daysRotation);
+        rollupTask.setSummary(window.count, window.errorCount, window.durationMin, window.durationMax, window.durationSum,
+                window.durations.percentile(0.5), window.durations.percentile(0.9), window.durations.percentile(0.99));
+        for (Map.Entry<String, Map<String, Long>> entry : window.stringValues.entrySet()) {
+            String topValues = entry.getValue().entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .limit(TOP_VALUES)
+                    .map(value -> value.getKey() + " (" + value.getValue() + ")")
+                    .collect(Collectors.joining(", "));
+            rollupTask.setTopValues(entry.getKey(), topValues);
+        }
+        return rollupTask;
+    }
+
+    private class RollupWindow {
+        private long count = 0;
+        private long errorCount = 0;
+        private long durationMin = Long.MAX_VALUE;
+        private long durationMax = 0;
+        private long durationSum = 0;
+        private final DurationSketch durations = new DurationSketch();
+        private final Map<String, Map<String, Long>> stringValues = new HashMap<>();
+
+        void add(CompletedTask completedTask) {
+            count++;
+            if (completedTask.isError()) {
+                errorCount++;
+            }
+            durationMin = Math.min(durationMin, completedTask.getDuration());
+            durationMax = Math.max(durationMax, completedTask.getDuration());
+            durationSum += completedTask.getDuration();
+            durations.add(completedTask.getDuration());
+            for (Map.Entry<String, String> entry : completedTask.getStrings().entrySet()) {
+                Map<String, Long> valuesCount = stringValues.computeIfAbsent(entry.getKey(), key -> new HashMap<>());
+                String value = valuesCount.containsKey(entry.getValue()) || valuesCount.size() < MAX_DISTINCT_VALUES_PER_STRING ? entry.getValue() : OTHER_VALUES;
+                valuesCount.merge(value, 1L, Long::sum);
+            }
+        }
+
+        RollupTask toSummary(WindowKey key) {
+            return summaryOf(key, this);
+        }
+    }
+
+    /*
+     * Log scaled durations histogram, percentiles are accurate to within ~5%
+     */
+    static class DurationSketch {
+        private static final double BASE = 1.05;
+        private static final double LOG_BASE = Math.log(BASE);
+        private static final int BUCKETS = 600;
+
+        private final long[] counts = new long[BUCKETS];
+        private long total = 0;
+
+        void add(long duration) {
+            counts[bucketOf(duration)]++;
+            total++;
+        }
+
+        long percentile(double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile * total);
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += counts[bucket];
+                if (seen >= rank) {
+                    return upperBoundOf(bucket);
+                }
+            }
+            return upperBoundOf(BUCKETS - 1);
+        }
+
+        private static int bucketOf(long duration) {
+            if (duration <= 0) {
+                return 0;
+            }
+            return (int) Math.min(BUCKETS - 1, 1 + Math.ceil(Math.log(duration) / LOG_BASE));
+        }
+
+        private static long upperBoundOf(int bucket) {
+            return bucket == 0 ? 0 : (long) Math.floor(Math.pow(BASE, bucket - 1));
+        }
+    }
+
+    private static class WindowKey {
+        private final String env;
+        private final String name;
+        private final long windowStart;
+
+        WindowKey(String env, String name, long windowStart) {
+            this.env = env;
+            this.name = name;
+            this.windowStart = windowStart;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            WindowKey windowKey = (WindowKey) o;
+            return windowStart == windowKey.windowStart && env.equals(windowKey.env) && name.equals(windowKey.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(env, name, windowStart);
+        }
+    }
+}
@@ -12,7 +12,6 @@ import java.util.*;
 import java.util.concurrent.BlockingQueue;
 import java.util.stream.Collectors;
 
-import static com.datorama.oss.timbermill.TaskIndexer.logErrorInEventsMap;
 
 public class ElasticsearchUtil {
 	public static final String CLIENT = "client";
@@ -20,7 +19,25 @@ public class ElasticsearchUtil {
 	public static final String REDIS_SERVICE = "redis_service";
 	public static final String EVENTS_QUEUE = "events_queue";
 	public static final String OVERFLOWED_EVENTS_QUEUE = "overflowed_events_queue";
+	public static final String TASK_INDEXER = "task_indexer";
 	public static final int THREAD_SLEEP = 2000;
+	// Merges partial aggregates of the same document, the summed metrics are added and the max and min metrics are kept extreme
+	public static final String MERGE_METRICS_SCRIPT =
+					  "if (ctx._source.metric == null) {"
+					+ "    ctx._source.metric = new HashMap();"
+					+ "}"
+					+ "for (def entry : params.sum.entrySet()) {"
+					+ "    def current = ctx._source.metric[entry.getKey()];"
+					+ "    ctx._source.metric[entry.getKey()] = current == null ? entry.getValue() : current + entry.getValue();"
+					+ "}"
+					+ "for (def entry : params.max.entrySet()) {"
+					+ "    def current = ctx._source.metric[entry.getKey()];"
+					+ "    ctx._source.metric[entry.getKey()] = current == null || current < entry.getValue() ? entry.getValue() : current;"
+					+ "}"
+					+ "for (def entry : params.min.entrySet()) {"
+					+ "    def current = ctx._source.metric[entry.getKey()];"
+					+ "    ctx._source.metric[entry.getKey()] = current == null || current > entry.getValue() ? entry.getValue() : current;"
+					+ "}";
 	public static final String SCRIPT =
 					  "if (params.orphan != null && !params.orphan) {"
 					+ "    ctx._source.orphan = false;"
@@ -315,15 +332,9 @@ public class ElasticsearchUtil {
 				Collection<Event> events = new ArrayList<>();
 				eventsQueue.drainTo(events, MAX_ELEMENTS);
 				KamonConstants.MESSAGES_IN_INPUT_QUEUE_RANGE_SAMPLER.withoutTags().decrement(events.size());
-				logErrorInEventsMap(events.stream().filter(event -> event.getTaskId() != null).collect(Collectors.groupingBy(Event::getTaskId)), "drainAndIndex");
-
-				events.forEach(e -> {
-					if (e.getEnv() == null){
-						e.setEnv(Constants.DEFAULT);
-					}
-				});
 
-				Map<String, List<Event>> eventsPerEnvMap = events.stream().collect(Collectors.groupingBy(Event::getEnv));
+				// Events are normalized on the ingesting threads, see TaskIndexer.prepareEvent
+				Map<String, List<Event>> eventsPerEnvMap = events.stream().collect(Collectors.groupingBy(e -> e.getEnv() == null ? Constants.DEFAULT : e.getEnv()));
 				for (Map.Entry<String, List<Event>> eventsPerEnv : eventsPerEnvMap.entrySet()) {
 					String env = eventsPerEnv.getKey().toLowerCase();
 
@@ -33,7 +33,18 @@ public class KamonConstants {
 	public static final Metric.Timer BULK_FETCH_JOB_LATENCY = Kamon.timer("timbermill2.failed.tasks.fetch.job.latency.timer");
 	public static final Metric.Histogram TASKS_FETCHED_FROM_DISK_HISTOGRAM = Kamon.histogram("timbermill2.failed.tasks.fetched.from.disk.histogram");
 	public static final Metric.Timer EVENTS_FETCH_JOB_LATENCY = Kamon.timer("timbermill2.overflowed.events.fetch.job.latency.timer");
+	public static final Metric.Histogram EVENTS_LANE_LAG_HISTOGRAM = Kamon.histogram("timbermill2.events.lane.lag.histogram");
+	public static final Metric.Counter EVENTS_OVER_ENV_QUOTA_COUNTER = Kamon.counter("timbermill2.events.over.env.quota.counter");
+	public static final Metric.Counter EVENTS_REJECTED_BY_ENV_QUOTA_COUNTER = Kamon.counter("timbermill2.events.rejected.by.env.quota.counter");
+	public static final Metric.Counter TASKS_CREATE_CONFLICTS_COUNTER = Kamon.counter("timbermill2.tasks.create.conflicts.counter");
+	public static final Metric.Counter METADATA_TASKS_DROPPED_COUNTER = Kamon.counter("timbermill2.metadata.tasks.dropped.counter");
+	public static final Metric.Histogram TASKS_ROLLED_UP_HISTOGRAM = Kamon.histogram("timbermill2.tasks.rolled.up.histogram");
+	public static final Metric.Timer PLUGIN_DURATION_TIMER = Kamon.timer("timbermill2.plugin.duration.timer");
+	public static final Metric.Counter PLUGIN_FAILURES_COUNTER = Kamon.counter("timbermill2.plugin.failures.counter");
+	public static final Metric.Counter PLUGIN_SKIPPED_COUNTER = Kamon.counter("timbermill2.plugin.skipped.counter");
 	public static final Metric.Gauge CURRENT_DATA_IN_DB_GAUGE = Kamon.gauge("timbermill2.data.in.db.gauge");
+	public static final Metric.Gauge BULK_SIZE_LIMIT_GAUGE = Kamon.gauge("timbermill2.bulk.size.limit.gauge");
+	public static final Metric.Gauge BULK_CONCURRENCY_LIMIT_GAUGE = Kamon.gauge("timbermill2.bulk.concurrency.limit.gauge");
 
 
 }
@@ -1,12 +1,14 @@
 package com.datorama.oss.timbermill.common.cache;
 
 import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.unit.ChildrenFanOut;
 import com.datorama.oss.timbermill.unit.LocalTask;
 import kamon.metric.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -58,13 +60,30 @@ public abstract class AbstractCacheHandler {
 
     abstract void pushToTasksCache(Map<String, LocalTask> idsToMap);
 
+    public abstract Map<String, ChildrenFanOut> getChildrenFanOuts(Collection<String> keys);
+
+    public abstract void pushChildrenFanOuts(Map<String, ChildrenFanOut> fanOuts);
+
     public abstract void close();
 
-    public void lock() {
+    // Locks the cache entries of the given tasks ids for the read, enrich and write phase of a batch
+    public CacheLock lock(Collection<String> tasksIds) {
+        //do nothing
+        return null;
+    }
+
+    // Adds the given tasks to a held lock before they are written, returns the tasks that couldn't be locked and must not be written
+    public Set<String> extend(CacheLock lock, Collection<String> tasksIds) {
+        //do nothing
+        return Collections.emptySet();
+    }
+
+    public void release(CacheLock lock) {
         //do nothing
     }
 
-    public void release() {
+    // Marks tasks that children were received for, so their cache entries are kept over completed tasks without children
+    public void markAsParents(Collection<String> parentsIds) {
         //do nothing
     }
 }
@@ -7,12 +7,18 @@ public class CacheConfig {
     private int cacheRedisTtlInSeconds;
     private long maximumTasksCacheWeight;
     private long maximumOrphansCacheWeight;
+    private int lockStripes;
 
     public CacheConfig(RedisService redisService, int cacheRedisTtlInSeconds, long maximumTasksCacheWeight, long maximumOrphansCacheWeight) {
+        this(redisService, cacheRedisTtlInSeconds, maximumTasksCacheWeight, maximumOrphansCacheWeight, 1);
+    }
+
+    public CacheConfig(RedisService redisService, int cacheRedisTtlInSeconds, long maximumTasksCacheWeight, long maximumOrphansCacheWeight, int lockStripes) {
         this.redisService = redisService;
         this.cacheRedisTtlInSeconds = cacheRedisTtlInSeconds;
         this.maximumTasksCacheWeight = maximumTasksCacheWeight;
         this.maximumOrphansCacheWeight = maximumOrphansCacheWeight;
+        this.lockStripes = lockStripes;
     }
 
     RedisService getRedisService() {
@@ -31,4 +37,8 @@ public class CacheConfig {
         return maximumOrphansCacheWeight;
     }
 
+    int getLockStripes() {
+        return lockStripes;
+    }
+
 }
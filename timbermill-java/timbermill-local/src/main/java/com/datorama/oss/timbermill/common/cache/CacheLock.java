@@ -0,0 +1,28 @@
+package com.datorama.oss.timbermill.common.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Handle of the cache lock stripes a batch holds, returned by lock and given back to release
+public class CacheLock {
+    private final List<String> stripes;
+    private final String token;
+
+    CacheLock(List<String> stripes, String token) {
+        this.stripes = new ArrayList<>(stripes);
+        this.token = token;
+    }
+
+    List<String> getStripes() {
+        return stripes;
+    }
+
+    void addStripes(Collection<String> moreStripes) {
+        stripes.addAll(moreStripes);
+    }
+
+    String getToken() {
+        return token;
+    }
+}
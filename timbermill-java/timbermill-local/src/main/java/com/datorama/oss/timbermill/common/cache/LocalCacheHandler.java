@@ -1,7 +1,9 @@
 package com.datorama.oss.timbermill.common.cache;
 
 import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.unit.ChildrenFanOut;
 import com.datorama.oss.timbermill.unit.LocalTask;
+import com.datorama.oss.timbermill.unit.TaskStatus;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.Weigher;
@@ -13,21 +15,25 @@ import java.util.Map;
 
 import static com.datorama.oss.timbermill.ElasticsearchClient.GSON;
 
+/*
+ * Tasks are kept in two segments. Completed tasks that weren't seen as parents are only kept in the smaller completed tasks segment,
+ * so they are evicted before unterminated tasks and parents, which are the tasks that are looked up when more of their children arrive.
+ */
 public class LocalCacheHandler extends AbstractCacheHandler {
+    private static final long MAX_CHILDREN_FAN_OUTS = 1000000;
+    private static final long MAX_KNOWN_PARENTS = 1000000;
+    private static final double COMPLETED_TASKS_WEIGHT_RATIO = 0.2;
+
     private Cache<String, String> tasksCache;
+    private Cache<String, String> completedTasksCache;
     private Cache<String, List<String>> orphansCache;
+    private Cache<String, Boolean> knownParents = CacheBuilder.newBuilder().maximumSize(MAX_KNOWN_PARENTS).build();
+    private Cache<String, ChildrenFanOut> childrenFanOutsCache = CacheBuilder.newBuilder().maximumSize(MAX_CHILDREN_FAN_OUTS).build();
 
     LocalCacheHandler(long maximumTasksCacheWeight, long maximumOrphansCacheWeight) {
-        tasksCache = CacheBuilder.newBuilder()
-                .maximumWeight(maximumTasksCacheWeight)
-                .weigher((Weigher<String, String>) (key, value) -> 2 * (key.length() + value.length()))
-                .removalListener(notification -> {
-                    String key = notification.getKey();
-                    String value = notification.getValue();
-                    KamonConstants.TASK_CACHE_SIZE_RANGE_SAMPLER.withoutTags().decrement(2 * (key.length() + value.length()));
-                    KamonConstants.TASK_CACHE_ENTRIES_RANGE_SAMPLER.withoutTags().decrement();
-                })
-                .build();
+        long completedTasksCacheWeight = (long) (maximumTasksCacheWeight * COMPLETED_TASKS_WEIGHT_RATIO);
+        tasksCache = buildTasksCache(maximumTasksCacheWeight - completedTasksCacheWeight);
+        completedTasksCache = buildTasksCache(completedTasksCacheWeight);
 
         orphansCache = CacheBuilder.newBuilder()
                 .maximumWeight(maximumOrphansCacheWeight)
@@ -40,6 +46,19 @@ public class LocalCacheHandler extends AbstractCacheHandler {
                 .build();
     }
 
+    private static Cache<String, String> buildTasksCache(long maximumWeight) {
+        return CacheBuilder.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((Weigher<String, String>) (key, value) -> 2 * (key.length() + value.length()))
+                .removalListener(notification -> {
+                    String key = notification.getKey();
+                    String value = notification.getValue();
+                    KamonConstants.TASK_CACHE_SIZE_RANGE_SAMPLER.withoutTags().decrement(2 * (key.length() + value.length()));
+                    KamonConstants.TASK_CACHE_ENTRIES_RANGE_SAMPLER.withoutTags().decrement();
+                })
+                .build();
+    }
+
     private int getEntryLength(String key, List<String> value) {
         int valuesLengths = value.stream().mapToInt(String::length).sum();
         int keyLength = key.length();
@@ -68,6 +87,9 @@ public class LocalCacheHandler extends AbstractCacheHandler {
         Map<String, LocalTask> retMap = Maps.newHashMap();
         for (String id : idsList) {
             String taskString = tasksCache.getIfPresent(id);
+            if (taskString == null) {
+                taskString = completedTasksCache.getIfPresent(id);
+            }
             LocalTask localTask = GSON.fromJson(taskString, LocalTask.class);
             retMap.put(id, localTask);
         }
@@ -81,14 +103,51 @@ public class LocalCacheHandler extends AbstractCacheHandler {
             String id = entry.getKey();
             LocalTask localTask = entry.getValue();
             String taskString = GSON.toJson(localTask);
-            tasksCache.put(id, taskString);
+            if (isCompletedLeaf(id, localTask)) {
+                tasksCache.invalidate(id);
+                completedTasksCache.put(id, taskString);
+            }
+            else {
+                completedTasksCache.invalidate(id);
+                tasksCache.put(id, taskString);
+            }
             KamonConstants.TASK_CACHE_SIZE_RANGE_SAMPLER.withoutTags().increment(2 * (id.length() + taskString.length()));
             KamonConstants.TASK_CACHE_ENTRIES_RANGE_SAMPLER.withoutTags().increment();
         }
     }
 
+    private boolean isCompletedLeaf(String id, LocalTask localTask) {
+        boolean completed = localTask.getStatus() == TaskStatus.SUCCESS || localTask.getStatus() == TaskStatus.ERROR;
+        return completed && knownParents.getIfPresent(id) == null;
+    }
+
+    @Override
+    public void markAsParents(Collection<String> parentsIds) {
+        for (String parentId : parentsIds) {
+            knownParents.put(parentId, Boolean.TRUE);
+            String taskString = completedTasksCache.getIfPresent(parentId);
+            if (taskString != null) {
+                completedTasksCache.invalidate(parentId);
+                tasksCache.put(parentId, taskString);
+                KamonConstants.TASK_CACHE_SIZE_RANGE_SAMPLER.withoutTags().increment(2 * (parentId.length() + taskString.length()));
+                KamonConstants.TASK_CACHE_ENTRIES_RANGE_SAMPLER.withoutTags().increment();
+            }
+        }
+    }
+
+    @Override
+    public Map<String, ChildrenFanOut> getChildrenFanOuts(Collection<String> keys) {
+        return Maps.newHashMap(childrenFanOutsCache.getAllPresent(keys));
+    }
+
+    @Override
+    public void pushChildrenFanOuts(Map<String, ChildrenFanOut> fanOuts) {
+        childrenFanOutsCache.putAll(fanOuts);
+    }
+
     @Override
     public void close() {
         tasksCache.cleanUp();
+        completedTasksCache.cleanUp();
     }
 }
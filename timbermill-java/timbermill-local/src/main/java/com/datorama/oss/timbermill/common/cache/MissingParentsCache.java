@@ -0,0 +1,43 @@
+package com.datorama.oss.timbermill.common.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/*
+ * Remembers for a while parents that were found neither in the cache nor in Elasticsearch, so batches with more of their children don't look them up again.
+ * Their children are orphans, and are still adopted through the orphans cache once the parent is received.
+ */
+public class MissingParentsCache {
+    private static final long MAX_MISSING_PARENTS = 1000000;
+
+    private final Cache<String, Boolean> missingParents;
+
+    public MissingParentsCache(long ttlInSeconds) {
+        if (ttlInSeconds < 1) {
+            throw new RuntimeException("Missing parents cache TTL should be larger than 0");
+        }
+        missingParents = CacheBuilder.newBuilder()
+                .maximumSize(MAX_MISSING_PARENTS)
+                .expireAfterWrite(ttlInSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    public Set<String> getMissing(Collection<String> parentIds) {
+        return parentIds.stream().filter(id -> missingParents.getIfPresent(id) != null).collect(Collectors.toSet());
+    }
+
+    public void putMissing(Collection<String> parentIds) {
+        for (String parentId : parentIds) {
+            missingParents.put(parentId, Boolean.TRUE);
+        }
+    }
+
+    public void invalidate(Collection<String> taskIds) {
+        missingParents.invalidateAll(taskIds);
+    }
+}
@@ -1,35 +1,48 @@
 package com.datorama.oss.timbermill.common.cache;
 
 import com.datorama.oss.timbermill.common.redis.RedisService;
+import com.datorama.oss.timbermill.unit.ChildrenFanOut;
 import com.datorama.oss.timbermill.unit.LocalTask;
-import com.github.jedis.lock.JedisLock;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class RedisCacheHandler extends AbstractCacheHandler {
 
     private static final String LOCK_NAME = "cache_lock";
     private static final String ORPHAN_PREFIX = "orphan###";
+    private static final String FAN_OUT_PREFIX = "fanout###";
+    private static final long EXTEND_LOCK_TIMEOUT_MILLIS = 1000;
+    private static final long MIN_LOCK_BACKOFF_MILLIS = 100;
+    private static final long MAX_LOCK_BACKOFF_MILLIS = 2000;
+    private static final int LOCKED_ORPHANS_LEVELS = 2;
     private static final Logger LOG = LoggerFactory.getLogger(RedisCacheHandler.class);
 
-    private JedisLock lock;
     private final RedisService redisService;
     private final int redisTtlInSeconds;
+    private final int lockStripes;
 
 
-    RedisCacheHandler(RedisService redisService, int cacheRedisTtlInSeconds) {
+    RedisCacheHandler(RedisService redisService, int cacheRedisTtlInSeconds, int lockStripes) {
         if (redisService == null){
             throw new RuntimeException("Redis cache used but no redis host defined");
         }
+        if (lockStripes < 1){
+            throw new RuntimeException("Cache lock stripes should be larger than 0");
+        }
         this.redisService = redisService;
         this.redisTtlInSeconds = cacheRedisTtlInSeconds;
+        this.lockStripes = lockStripes;
     }
 
     @Override
@@ -71,13 +84,125 @@ public class RedisCacheHandler extends AbstractCacheHandler {
     }
 
     @Override
-    public void lock() {
-        lock = redisService.lock(LOCK_NAME);
+    public Map<String, ChildrenFanOut> getChildrenFanOuts(Collection<String> keys) {
+        Set<String> fanOutKeys = keys.stream().map(s -> FAN_OUT_PREFIX + s).collect(Collectors.toSet());
+        Map<String, ChildrenFanOut> fanOuts = redisService.getFromRedis(fanOutKeys);
+
+        Map<String, ChildrenFanOut> retMap = Maps.newHashMap();
+        for (Map.Entry<String, ChildrenFanOut> entry : fanOuts.entrySet()) {
+            retMap.put(entry.getKey().substring(FAN_OUT_PREFIX.length()), entry.getValue());
+        }
+        return retMap;
+    }
+
+    @Override
+    public void pushChildrenFanOuts(Map<String, ChildrenFanOut> fanOuts) {
+        Map<String, ChildrenFanOut> newFanOuts = Maps.newHashMap();
+        for (Map.Entry<String, ChildrenFanOut> entry : fanOuts.entrySet()) {
+            newFanOuts.put(FAN_OUT_PREFIX + entry.getKey(), entry.getValue());
+        }
+        if (!redisService.pushToRedis(newFanOuts, redisTtlInSeconds)){
+            LOG.error("Failed to push some keys to Redis children fan-out cache.");
+        }
+    }
+
+    /*
+     * Stripes are picked by the tasks' trees, the primary id of a cached task or the task id while it has none, so a whole tree maps to one stripe.
+     * The cached orphans the tasks may adopt are locked with them, deeper orphans are locked through extend once they are adopted.
+     * A task's tree changes once, when it is first cached with a primary id or adopted, so the tasks' own stripes are computed again once taken,
+     * and if they changed they are all released and taken again with the new ones.
+     * Stripes are always taken at once, so no batch waits for stripes while holding others.
+     */
+    @Override
+    public CacheLock lock(Collection<String> tasksIds) {
+        List<String> stripes = getLockStripes(tasksIds);
+        while (true) {
+            String token = lockAll(stripes);
+            if (token == null || lockStripes == 1) {
+                return new CacheLock(stripes, token);
+            }
+            List<String> currentStripes = getTasksStripes(tasksIds).values().stream().distinct().collect(Collectors.toList());
+            if (stripes.containsAll(currentStripes)) {
+                return new CacheLock(stripes, token);
+            }
+            redisService.releaseAll(stripes, token);
+            stripes = Stream.concat(stripes.stream(), currentStripes.stream()).distinct().sorted().collect(Collectors.toList());
+        }
+    }
+
+    // Like the JedisLock it replaced, a batch that couldn't lock in time goes on unlocked, a failing Redis is retried with a backoff meanwhile
+    private String lockAll(List<String> stripes) {
+        String token = UUID.randomUUID().toString();
+        long timeoutTime = System.currentTimeMillis() + redisService.getLockTimeoutMillis();
+        long backoffMillis = MIN_LOCK_BACKOFF_MILLIS;
+        long remainingMillis;
+        while ((remainingMillis = timeoutTime - System.currentTimeMillis()) > 0) {
+            if (redisService.lockAll(stripes, token, remainingMillis)) {
+                return token;
+            }
+            try {
+                Thread.sleep(Math.min(backoffMillis, Math.max(0, timeoutTime - System.currentTimeMillis())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while locking the Redis cache", e);
+            }
+            backoffMillis = Math.min(MAX_LOCK_BACKOFF_MILLIS, backoffMillis * 2);
+        }
+        LOG.error("Couldn't lock {} Redis cache lock stripes in {}ms, going on unlocked", stripes.size(), redisService.getLockTimeoutMillis());
+        return null;
+    }
+
+    // Adopted tasks are expected to be covered already, stripes that are still missing are only waited for shortly since other stripes are held
+    @Override
+    public Set<String> extend(CacheLock lock, Collection<String> tasksIds) {
+        if (lock == null || lock.getToken() == null || lockStripes == 1 || tasksIds.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Map<String, String> idToStripe = getTasksStripes(tasksIds);
+        List<String> missingStripes = idToStripe.values().stream().filter(stripe -> !lock.getStripes().contains(stripe)).distinct().sorted().collect(Collectors.toList());
+        if (missingStripes.isEmpty()) {
+            return Collections.emptySet();
+        }
+        if (redisService.lockAll(missingStripes, lock.getToken(), EXTEND_LOCK_TIMEOUT_MILLIS)) {
+            lock.addStripes(missingStripes);
+            return Collections.emptySet();
+        }
+        return idToStripe.entrySet().stream().filter(entry -> missingStripes.contains(entry.getValue())).map(Map.Entry::getKey).collect(Collectors.toSet());
     }
 
     @Override
-    public void release() {
-        redisService.release(lock);
+    public void release(CacheLock lock) {
+        if (lock != null && lock.getToken() != null) {
+            redisService.releaseAll(lock.getStripes(), lock.getToken());
+        }
+    }
+
+    private List<String> getLockStripes(Collection<String> tasksIds) {
+        if (lockStripes == 1) {
+            return Collections.singletonList(LOCK_NAME);
+        }
+        return getTasksStripes(withCachedOrphans(tasksIds)).values().stream().distinct().sorted().collect(Collectors.toList());
+    }
+
+    private Map<String, String> getTasksStripes(Collection<String> tasksIds) {
+        Map<String, LocalTask> cachedTasks = getFromTasksCache(tasksIds);
+        Map<String, String> idToStripe = Maps.newHashMap();
+        for (String id : tasksIds) {
+            LocalTask cachedTask = cachedTasks.get(id);
+            String treeId = cachedTask != null && cachedTask.getPrimaryId() != null ? cachedTask.getPrimaryId() : id;
+            idToStripe.put(id, LOCK_NAME + "_" + Math.floorMod(treeId.hashCode(), lockStripes));
+        }
+        return idToStripe;
+    }
+
+    // Reading the orphans cache in Redis doesn't remove the orphans, so the first levels of the orphans chains under the tasks are found before locking
+    private Set<String> withCachedOrphans(Collection<String> tasksIds) {
+        Set<String> ids = Sets.newHashSet(tasksIds);
+        Collection<String> parentsIds = tasksIds;
+        for (int level = 0; level < LOCKED_ORPHANS_LEVELS && !parentsIds.isEmpty(); level++) {
+            parentsIds = pullFromOrphansCache(parentsIds).values().stream().flatMap(List::stream).filter(ids::add).collect(Collectors.toList());
+        }
+        return ids;
     }
 
     @Override
@@ -6,13 +6,19 @@ import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.rest.RestStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.datorama.oss.timbermill.Bulker;
 import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.unit.Task;
 import com.google.common.collect.Lists;
 
+import static com.datorama.oss.timbermill.ElasticsearchClient.GSON;
+
 public class IndexRetryManager {
 
 	private static final Logger LOG = LoggerFactory.getLogger(IndexRetryManager.class);
@@ -32,9 +38,31 @@ public class IndexRetryManager {
 
 	//Return failed amount of requests
 	public List<BulkResponse> indexBulkRequest(DbBulkRequest dbBulkRequest, int bulkNum) {
+		return indexBulkRequest(dbBulkRequest, bulkNum, 1, Lists.newArrayList());
+	}
 
+	// Continues a bulk whose first try was sent asynchronously, its failed requests are retried and persisted like those of any other bulk
+	public List<BulkResponse> indexBulkRequestAfterFirstTry(DbBulkRequest dbBulkRequest, int bulkNum, BulkResponse response, Throwable failure) {
 		List<BulkResponse> resList = Lists.newArrayList();
-		for (int tryNum = 1; tryNum <= numOfElasticSearchActionsTries; tryNum++) {
+		if (response == null) {
+			LOG.warn("Bulk #{} Try number #{}/{} has failed, failure message: {}.", bulkNum, 1, numOfElasticSearchActionsTries, failure == null ? null : failure.getMessage());
+		}
+		else {
+			resList.add(response);
+			if (!response.hasFailures()) {
+				return successfulResponseHandling(dbBulkRequest, bulkNum, resList, 1, response);
+			}
+			dbBulkRequest = failureResponseHandling(dbBulkRequest, bulkNum, 1, response);
+			if (dbBulkRequest.numOfActions() < 1) {
+				LOG.info("Bulk #{} Started bulk try # {}/{} all failed response were blacklisted, no further actions will be sent.", bulkNum, 1, numOfElasticSearchActionsTries);
+				return resList;
+			}
+		}
+		return indexBulkRequest(dbBulkRequest, bulkNum, 2, resList);
+	}
+
+	private List<BulkResponse> indexBulkRequest(DbBulkRequest dbBulkRequest, int bulkNum, int firstTryNum, List<BulkResponse> resList) {
+		for (int tryNum = firstTryNum; tryNum <= numOfElasticSearchActionsTries; tryNum++) {
 			// continuous retries of sending the failed bulk request
 			try {
 				if (tryNum > 1) {
@@ -126,7 +154,10 @@ public class IndexRetryManager {
 			for (int i = 0 ; i < length; i++){
 				BulkItemResponse bulkItemResponse = responses[i];
 				DocWriteRequest<?> request = requests.get(i);
-				if (bulkItemResponse.isFailed() && !isFailureBlackListed(bulkItemResponse.getFailureMessage(), request)){
+				if (bulkItemResponse.isFailed() && isCreateConflict(bulkItemResponse, request)){
+					failedRequestsBulk.add(toScriptedUpsert((IndexRequest) request));
+				}
+				else if (bulkItemResponse.isFailed() && !isFailureBlackListed(bulkItemResponse.getFailureMessage(), request)){
 					failedRequestsBulk.add(request);
 				}
 			}
@@ -136,6 +167,17 @@ public class IndexRetryManager {
 		return dbBulkRequest;
 	}
 
+	// A task's first write creates its document, if the document already exists the task is merged into it by the stored script instead
+	private static boolean isCreateConflict(BulkItemResponse bulkItemResponse, DocWriteRequest<?> request) {
+		return request instanceof IndexRequest && request.opType() == DocWriteRequest.OpType.CREATE && bulkItemResponse.status() == RestStatus.CONFLICT;
+	}
+
+	private static UpdateRequest toScriptedUpsert(IndexRequest request) {
+		KamonConstants.TASKS_CREATE_CONFLICTS_COUNTER.withoutTags().increment();
+		Task task = GSON.fromJson(request.source().utf8ToString(), Task.class);
+		return task.getUpdateRequest(request.index(), request.id());
+	}
+
 	public PersistenceHandler getPersistenceHandler() {
 		return persistenceHandler;
 	}
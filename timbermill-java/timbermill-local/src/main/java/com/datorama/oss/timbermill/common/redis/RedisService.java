@@ -26,6 +26,13 @@ import java.util.concurrent.Callable;
 public class RedisService {
 
     private static final Logger LOG = LoggerFactory.getLogger(RedisService.class);
+    private static final int LOCK_TIMEOUT_MILLIS = 20000;
+    private static final int LOCK_EXPIRY_MILLIS = 20000;
+    private static final int LOCK_RETRY_MILLIS = 50;
+    // Takes all the keys or none of them, so stripes can't deadlock whatever order batches take them in
+    private static final String LOCK_ALL_SCRIPT = "for _, key in ipairs(KEYS) do if redis.call('exists', key) == 1 then return 0 end end "
+            + "for _, key in ipairs(KEYS) do redis.call('set', key, ARGV[1], 'PX', ARGV[2]) end return 1";
+    private static final String RELEASE_ALL_SCRIPT = "for _, key in ipairs(KEYS) do if redis.call('get', key) == ARGV[1] then redis.call('del', key) end end return 1";
 
     private final JedisPool jedisPool;
     private final Pool<Kryo> kryoPool;
@@ -75,9 +82,11 @@ public class RedisService {
                 kryo.register(com.datorama.oss.timbermill.unit.SuccessEvent.class);
                 kryo.register(com.datorama.oss.timbermill.unit.ErrorEvent.class);
                 kryo.register(com.datorama.oss.timbermill.unit.StartEvent.class);
+                kryo.register(com.datorama.oss.timbermill.unit.ChildrenFanOut.class);
                 kryo.register(byte[].class);
                 kryo.register(com.datorama.oss.timbermill.common.persistence.DbBulkRequest.class);
                 kryo.register(org.elasticsearch.action.bulk.BulkRequest.class, new BulkRequestSerializer());
+                kryo.register(UnmodifiableListSerializer.UNMODIFIABLE_LIST_CLASS, new UnmodifiableListSerializer());
                 return kryo;
             }
         };
@@ -239,14 +248,36 @@ public class RedisService {
         return lock;
     }
 
-    public JedisLock lock(String lockName) {
-        JedisLock lock = new JedisLock(lockName, 20000, 20000);
+    // Takes all the keys with the given token, returns false if they couldn't be taken before the timeout
+    public boolean lockAll(List<String> lockKeys, String token, long timeoutMillis) {
+        List<String> args = Arrays.asList(token, String.valueOf(LOCK_EXPIRY_MILLIS));
+        long timeoutTime = System.currentTimeMillis() + timeoutMillis;
         try (Jedis jedis = jedisPool.getResource()) {
-            lock.acquire(jedis);
+            do {
+                Object acquired = jedis.eval(LOCK_ALL_SCRIPT, lockKeys, args);
+                if (Long.valueOf(1).equals(acquired)) {
+                    return true;
+                }
+                Thread.sleep(LOCK_RETRY_MILLIS);
+            } while (System.currentTimeMillis() < timeoutTime);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
-            LOG.error("Error while locking lock {} in Redis", lockName, e);
+            LOG.error("Error while locking {} lock keys in Redis", lockKeys.size(), e);
+        }
+        return false;
+    }
+
+    public long getLockTimeoutMillis() {
+        return LOCK_TIMEOUT_MILLIS;
+    }
+
+    public void releaseAll(List<String> lockKeys, String token) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.eval(RELEASE_ALL_SCRIPT, lockKeys, Collections.singletonList(token));
+        } catch (Exception e) {
+            LOG.error("Error while releasing {} lock keys in Redis", lockKeys.size(), e);
         }
-        return lock;
     }
 
     public void release(JedisLock lock) {
@@ -0,0 +1,20 @@
+package com.datorama.oss.timbermill.common.redis;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.serializers.CollectionSerializer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Parents paths are shared read-only lists, they are read back as plain lists since the view itself can't be created by Kryo
+public class UnmodifiableListSerializer extends CollectionSerializer<List<Object>> {
+
+    public static final Class<?> UNMODIFIABLE_LIST_CLASS = Collections.unmodifiableList(new ArrayList<>()).getClass();
+
+    @Override
+    protected List<Object> create(Kryo kryo, Input input, Class<? extends List<Object>> type, int size) {
+        return new ArrayList<>(size);
+    }
+}
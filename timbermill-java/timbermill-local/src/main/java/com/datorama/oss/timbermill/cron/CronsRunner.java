@@ -10,6 +10,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.datorama.oss.timbermill.ElasticsearchClient;
+import com.datorama.oss.timbermill.TaskIndexer;
 import com.datorama.oss.timbermill.common.persistence.PersistenceHandler;
 import com.datorama.oss.timbermill.unit.Event;
 
@@ -24,7 +25,7 @@ public class CronsRunner {
 	private Scheduler scheduler;
 
 	public void runCrons(String bulkPersistentFetchCronExp, String eventsPersistentFetchCronExp, PersistenceHandler persistenceHandler, ElasticsearchClient es, String deletionCronExp, BlockingQueue<Event> buffer,
-						 BlockingQueue<Event> overFlowedEvents, String mergingCronExp, RedisService redisService) {
+						 BlockingQueue<Event> overFlowedEvents, String mergingCronExp, RedisService redisService, String rolloverCronExp, TaskIndexer taskIndexer) {
 		final StdSchedulerFactory sf = new StdSchedulerFactory();
 		try {
 			 scheduler = sf.getScheduler();
@@ -34,7 +35,7 @@ public class CronsRunner {
 				}
 
 				if (!Strings.isEmpty(eventsPersistentFetchCronExp)) {
-					runEventsPersistentFetchCron(eventsPersistentFetchCronExp, persistenceHandler, buffer, overFlowedEvents);
+					runEventsPersistentFetchCron(eventsPersistentFetchCronExp, persistenceHandler, buffer, overFlowedEvents, taskIndexer);
 				}
 			}
 			if (!Strings.isEmpty(deletionCronExp)) {
@@ -43,6 +44,9 @@ public class CronsRunner {
 			if (!Strings.isEmpty(mergingCronExp)) {
 				runPartialMergingTasksCron(es, mergingCronExp, redisService);
 			}
+			if (!Strings.isEmpty(rolloverCronExp)) {
+				runIndexRolloverCron(es, rolloverCronExp);
+			}
 			scheduler.start();
 		} catch (SchedulerException e) {
 			LOG.error("Could not start crons", e);
@@ -59,11 +63,12 @@ public class CronsRunner {
 	}
 
 	private void runEventsPersistentFetchCron(String eventsPersistentFetchCronExp, PersistenceHandler persistenceHandler, BlockingQueue<Event> buffer,
-											  BlockingQueue<Event> overFlowedEvents) throws SchedulerException {
+											  BlockingQueue<Event> overFlowedEvents, TaskIndexer taskIndexer) throws SchedulerException {
 		JobDataMap jobDataMap = new JobDataMap();
 		jobDataMap.put(PERSISTENCE_HANDLER, persistenceHandler);
 		jobDataMap.put(EVENTS_QUEUE, buffer);
 		jobDataMap.put(OVERFLOWED_EVENTS_QUEUE, overFlowedEvents);
+		jobDataMap.put(TASK_INDEXER, taskIndexer);
 
 		JobDetail job = newJob(EventsPersistentFetchJob.class)
 				.withIdentity("job3", "group3").usingJobData(jobDataMap)
@@ -119,4 +124,17 @@ public class CronsRunner {
 		scheduler.scheduleJob(job, trigger);
 	}
 
+	private void runIndexRolloverCron(ElasticsearchClient es, String rolloverCronExp) throws SchedulerException{
+		JobDataMap jobDataMap = new JobDataMap();
+		jobDataMap.put(CLIENT, es);
+		JobDetail job = newJob(IndexRolloverJob.class)
+				.withIdentity("job6", "group6").usingJobData(jobDataMap)
+				.build();
+		CronTrigger trigger = newTrigger()
+				.withIdentity("trigger6", "group6")
+				.withSchedule(cronSchedule(rolloverCronExp))
+				.build();
+		scheduler.scheduleJob(job, trigger);
+	}
+
 }
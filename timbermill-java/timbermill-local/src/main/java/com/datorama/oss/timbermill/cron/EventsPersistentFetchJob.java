@@ -1,9 +1,12 @@
 package com.datorama.oss.timbermill.cron;
 
+import com.datorama.oss.timbermill.TaskIndexer;
 import com.datorama.oss.timbermill.common.KamonConstants;
 import com.datorama.oss.timbermill.common.persistence.PersistenceHandler;
+import com.datorama.oss.timbermill.pipe.EnvFairEventsQueue;
 import com.datorama.oss.timbermill.pipe.LocalOutputPipe;
 import com.datorama.oss.timbermill.unit.Event;
+import com.google.common.collect.Lists;
 import kamon.metric.Timer;
 import org.quartz.DisallowConcurrentExecution;
 import org.quartz.Job;
@@ -12,6 +15,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
@@ -27,6 +31,8 @@ public class EventsPersistentFetchJob implements Job {
 		PersistenceHandler persistenceHandler = (PersistenceHandler) context.getJobDetail().getJobDataMap().get(PERSISTENCE_HANDLER);
 		BlockingQueue<Event> eventsQueue = (BlockingQueue<Event>) context.getJobDetail().getJobDataMap().get(EVENTS_QUEUE);
 		BlockingQueue<Event> overflowedQueue = (BlockingQueue<Event>) context.getJobDetail().getJobDataMap().get(OVERFLOWED_EVENTS_QUEUE);
+		TaskIndexer taskIndexer = (TaskIndexer) context.getJobDetail().getJobDataMap().get(TASK_INDEXER);
+		EnvFairEventsQueue envFairQueue = eventsQueue instanceof EnvFairEventsQueue ? (EnvFairEventsQueue) eventsQueue : null;
 		if (persistenceHandler != null && hasEnoughRoomLeft(eventsQueue)) {
 			KamonConstants.CURRENT_DATA_IN_DB_GAUGE.withTag("type", "overflowed_events_lists_amount").update(persistenceHandler.overFlowedEventsListsAmount());
 			String flowId = "Overflowed Event Persistent Fetch Job - " + UUID.randomUUID().toString();
@@ -39,8 +45,29 @@ public class EventsPersistentFetchJob implements Job {
 					break;
 				}
 				else {
+					ArrayList<Event> overQuotaEvents = Lists.newArrayList();
+					int pushed = 0;
 					for (Event event : events) {
-						LocalOutputPipe.pushEventToQueues(persistenceHandler, eventsQueue, overflowedQueue, event);
+						// Spilled events may predate normalization, so replayed events are prepared like ingested ones
+						if (taskIndexer != null && !taskIndexer.prepareEvent(event)) {
+							continue;
+						}
+						if (envFairQueue != null && envFairQueue.isOverQuota(event)) {
+							KamonConstants.EVENTS_OVER_ENV_QUOTA_COUNTER.withTag("env", event.getEnv()).increment();
+							overQuotaEvents.add(event);
+						}
+						else {
+							LocalOutputPipe.pushEventToQueues(persistenceHandler, eventsQueue, overflowedQueue, event);
+							pushed++;
+						}
+					}
+					// Events of envs over their quota are persisted back directly, instead of being refused and spilled again through the overflowed queue
+					if (!overQuotaEvents.isEmpty()) {
+						persistenceHandler.persistEvents(overQuotaEvents);
+						if (pushed == 0) {
+							LOG.info("All {} fetched events are of envs over their quota, stopping fetch", overQuotaEvents.size());
+							break;
+						}
 					}
 				}
 			}
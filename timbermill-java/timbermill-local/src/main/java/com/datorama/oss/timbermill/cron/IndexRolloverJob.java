@@ -0,0 +1,22 @@
+package com.datorama.oss.timbermill.cron;
+
+import com.datorama.oss.timbermill.ElasticsearchClient;
+import com.datorama.oss.timbermill.common.ElasticsearchUtil;
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.slf4j.MDC;
+
+import java.util.UUID;
+
+@DisallowConcurrentExecution
+public class IndexRolloverJob implements Job {
+
+	@Override
+	public void execute(JobExecutionContext context) {
+		ElasticsearchClient client = (ElasticsearchClient) context.getJobDetail().getJobDataMap().get(ElasticsearchUtil.CLIENT);
+		String flowId = "Index Rollover Job - " + UUID.randomUUID().toString();
+		MDC.put("id", flowId);
+		client.rolloverCurrentIndices();
+	}
+}
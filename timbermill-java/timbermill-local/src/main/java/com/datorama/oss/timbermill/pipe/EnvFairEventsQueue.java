@@ -0,0 +1,277 @@
+package com.datorama.oss.timbermill.pipe;
+
+import com.datorama.oss.timbermill.common.Constants;
+import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.unit.Event;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/*
+ * Bounded events queue that keeps a sub queue per env and drains the envs by their weights, so a noisy env can't starve the others.
+ * An env that is over its events or bytes quota is refused by offer, and its events go to the overflowed queue and persistence like any other full queue.
+ */
+public class EnvFairEventsQueue extends AbstractQueue<Event> implements BlockingQueue<Event> {
+
+    private static final int DEFAULT_WEIGHT = 1;
+
+    private final long envMaxEvents;
+    private final long envMaxBytes;
+    private final Map<String, Integer> envWeights;
+    private final Supplier<BlockingQueue<Event>> subQueueSupplier;
+    private final Map<String, EnvQueue> envQueues = new ConcurrentHashMap<>();
+    private final Semaphore queuedPermits = new Semaphore(0);
+    private final Semaphore freePermits;
+    private final AtomicInteger nextEnv = new AtomicInteger(0);
+
+    // Quotas of 0 are unlimited, sub queues must be unbounded or at least as large as the capacity
+    public EnvFairEventsQueue(int capacity, long envMaxEvents, long envMaxBytes, Map<String, Integer> envWeights, Supplier<BlockingQueue<Event>> subQueueSupplier) {
+        if (envMaxEvents < 0 || envMaxBytes < 0) {
+            throw new RuntimeException("Env quotas should not be below 0");
+        }
+        freePermits = new Semaphore(capacity);
+        this.envMaxEvents = envMaxEvents;
+        this.envMaxBytes = envMaxBytes;
+        this.envWeights = new HashMap<>(envWeights);
+        this.subQueueSupplier = subQueueSupplier;
+    }
+
+    // Weights are given as env:weight pairs separated by commas, envs that aren't listed have a weight of 1
+    public static Map<String, Integer> parseWeights(String weights) {
+        Map<String, Integer> envWeights = new HashMap<>();
+        if (weights == null) {
+            return envWeights;
+        }
+        for (String envWeight : weights.split(",")) {
+            if (envWeight.trim().isEmpty()) {
+                continue;
+            }
+            String[] parts = envWeight.split(":");
+            if (parts.length != 2) {
+                throw new RuntimeException("Env weight should be of the form env:weight, got " + envWeight);
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight < 1) {
+                throw new RuntimeException("Env weight should be larger than 0, got " + envWeight);
+            }
+            envWeights.put(parts[0].trim(), weight);
+        }
+        return envWeights;
+    }
+
+    public boolean isOverQuota(Event event) {
+        EnvQueue envQueue = envQueues.get(envOf(event));
+        if (envQueue == null) {
+            return false;
+        }
+        boolean overEvents = envMaxEvents > 0 && envQueue.events.get() >= envMaxEvents;
+        boolean overBytes = envMaxBytes > 0 && envQueue.bytes.get() + event.estimatedSize() > envMaxBytes;
+        return overEvents || overBytes;
+    }
+
+    private static String envOf(Event event) {
+        return event.getEnv() == null ? Constants.DEFAULT : event.getEnv();
+    }
+
+    @Override
+    public boolean offer(Event event) {
+        if (isOverQuota(event)) {
+            KamonConstants.EVENTS_OVER_ENV_QUOTA_COUNTER.withTag("env", envOf(event)).increment();
+            return false;
+        }
+        if (!freePermits.tryAcquire()) {
+            return false;
+        }
+        enqueue(event);
+        return true;
+    }
+
+    @Override
+    public boolean offer(Event event, long timeout, TimeUnit unit) throws InterruptedException {
+        if (isOverQuota(event)) {
+            KamonConstants.EVENTS_OVER_ENV_QUOTA_COUNTER.withTag("env", envOf(event)).increment();
+            return false;
+        }
+        if (!freePermits.tryAcquire(timeout, unit)) {
+            return false;
+        }
+        enqueue(event);
+        return true;
+    }
+
+    @Override
+    public void put(Event event) throws InterruptedException {
+        freePermits.acquire();
+        enqueue(event);
+    }
+
+    private void enqueue(Event event) {
+        EnvQueue envQueue = envQueues.computeIfAbsent(envOf(Objects.requireNonNull(event)), env -> new EnvQueue(subQueueSupplier.get()));
+        envQueue.events.incrementAndGet();
+        envQueue.bytes.addAndGet(event.estimatedSize());
+        envQueue.queue.add(event);
+        queuedPermits.release();
+    }
+
+    @Override
+    public Event poll() {
+        return queuedPermits.tryAcquire() ? dequeue() : null;
+    }
+
+    @Override
+    public Event poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return queuedPermits.tryAcquire(timeout, unit) ? dequeue() : null;
+    }
+
+    @Override
+    public Event take() throws InterruptedException {
+        queuedPermits.acquire();
+        return dequeue();
+    }
+
+    // Must hold a queued permit, envs are polled round robin
+    private Event dequeue() {
+        List<EnvQueue> queues = new ArrayList<>(envQueues.values());
+        int start = Math.floorMod(nextEnv.getAndIncrement(), queues.size());
+        for (int i = 0; i < queues.size(); i++) {
+            EnvQueue envQueue = queues.get((start + i) % queues.size());
+            Event event = envQueue.queue.poll();
+            if (event != null) {
+                envQueue.removed(event);
+                freePermits.release();
+                return event;
+            }
+        }
+        throw new IllegalStateException("Events queue permits are out of sync with its envs queues");
+    }
+
+    @Override
+    public int drainTo(Collection<? super Event> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Event> c, int maxElements) {
+        int queued = queuedPermits.drainPermits();
+        int toDrain = Math.min(queued, maxElements);
+        queuedPermits.release(queued - toDrain);
+        if (toDrain <= 0) {
+            return 0;
+        }
+
+        int drained = 0;
+        for (Map.Entry<String, Integer> entry : getEnvsQuotas(toDrain).entrySet()) {
+            drained += drainEnv(envQueues.get(entry.getKey()), c, entry.getValue());
+        }
+        // Quotas are computed from the envs sizes, which other threads keep adding to, so drain anything that is still owed
+        while (drained < toDrain) {
+            int drainedInRound = 0;
+            for (EnvQueue envQueue : envQueues.values()) {
+                drainedInRound += drainEnv(envQueue, c, toDrain - drained - drainedInRound);
+            }
+            if (drainedInRound == 0) {
+                throw new IllegalStateException("Events queue permits are out of sync with its envs queues");
+            }
+            drained += drainedInRound;
+        }
+        freePermits.release(drained);
+        return drained;
+    }
+
+    private static int drainEnv(EnvQueue envQueue, Collection<? super Event> c, int maxElements) {
+        if (maxElements <= 0) {
+            return 0;
+        }
+        List<Event> events = new ArrayList<>();
+        envQueue.queue.drainTo(events, maxElements);
+        events.forEach(envQueue::removed);
+        c.addAll(events);
+        return events.size();
+    }
+
+    // Non empty envs get a share of the drain by their weights, what an env can't use is given to the envs that still have events
+    private Map<String, Integer> getEnvsQuotas(int toDrain) {
+        Map<String, Integer> sizes = new HashMap<>();
+        envQueues.forEach((env, envQueue) -> {
+            int size = envQueue.queue.size();
+            if (size > 0) {
+                sizes.put(env, size);
+            }
+        });
+
+        Map<String, Integer> quotas = new HashMap<>();
+        int left = toDrain;
+        while (left > 0 && !sizes.isEmpty()) {
+            int totalWeight = sizes.keySet().stream().mapToInt(env -> envWeights.getOrDefault(env, DEFAULT_WEIGHT)).sum();
+            int leftInRound = left;
+            Iterator<Map.Entry<String, Integer>> iterator = sizes.entrySet().iterator();
+            while (iterator.hasNext() && left > 0) {
+                Map.Entry<String, Integer> entry = iterator.next();
+                long share = Math.max(1, (long) leftInRound * envWeights.getOrDefault(entry.getKey(), DEFAULT_WEIGHT) / totalWeight);
+                int quota = (int) Math.min(Math.min(share, entry.getValue()), left);
+                quotas.merge(entry.getKey(), quota, Integer::sum);
+                left -= quota;
+                if (quota == entry.getValue()) {
+                    iterator.remove();
+                }
+                else {
+                    entry.setValue(entry.getValue() - quota);
+                }
+            }
+        }
+        return quotas;
+    }
+
+    @Override
+    public Event peek() {
+        for (EnvQueue envQueue : envQueues.values()) {
+            Event event = envQueue.queue.peek();
+            if (event != null) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return queuedPermits.availablePermits();
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return freePermits.availablePermits();
+    }
+
+    @Override
+    public Iterator<Event> iterator() {
+        List<Iterator<Event>> iterators = Lists.newArrayList();
+        for (EnvQueue envQueue : envQueues.values()) {
+            iterators.add(Iterators.unmodifiableIterator(envQueue.queue.iterator()));
+        }
+        return Iterators.concat(iterators.iterator());
+    }
+
+    private static class EnvQueue {
+        private final BlockingQueue<Event> queue;
+        private final AtomicInteger events = new AtomicInteger(0);
+        private final AtomicLong bytes = new AtomicLong(0);
+
+        EnvQueue(BlockingQueue<Event> queue) {
+            this.queue = queue;
+        }
+
+        void removed(Event event) {
+            events.decrementAndGet();
+            bytes.addAndGet(-event.estimatedSize());
+        }
+    }
+}
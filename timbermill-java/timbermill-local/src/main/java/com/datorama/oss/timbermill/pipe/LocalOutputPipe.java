@@ -50,13 +50,16 @@ public class LocalOutputPipe implements EventOutputPipe {
                 builder.numberOfShards, builder.numberOfReplicas, builder.maxTotalFields, builder.bulker, builder.scrollLimitation, builder.scrollTimeoutSeconds, builder.fetchByIdsPartitions,
                 builder.expiredMaxIndicesToDeleteInParallel);
 
-        CacheConfig cacheParams = new CacheConfig(redisService, builder.redisTtlInSeconds, builder.maximumTasksCacheWeight, builder.maximumOrphansCacheWeight);
+        CacheConfig cacheParams = new CacheConfig(redisService, builder.redisTtlInSeconds, builder.maximumTasksCacheWeight, builder.maximumOrphansCacheWeight, builder.cacheLockStripes);
         AbstractCacheHandler cacheHandler = CacheHandlerUtil.getCacheHandler(builder.cacheStrategy, cacheParams);
-        taskIndexer = new TaskIndexer(builder.pluginsJson, builder.daysRotation, esClient, builder.timbermillVersion,cacheHandler);
+        taskIndexer = new TaskIndexer(builder.pluginsJson, builder.daysRotation, esClient, builder.timbermillVersion, cacheHandler, builder.pluginsParallelism,
+                builder.pluginTimeBudgetMillis, builder.rollupTaskNames, builder.rollupWindowSeconds, builder.rollupSampleRate,
+                builder.maxChildrenPerParent, builder.duplicateStartCheckSampleRate, builder.deferredParentsResolution,
+                builder.missingParentsCacheTtlSeconds);
         cronsRunner = new CronsRunner();
         cronsRunner.runCrons(builder.bulkPersistentFetchCronExp, builder.eventsPersistentFetchCronExp, persistenceHandler, esClient,
                 builder.deletionCronExp, buffer, overflowedQueue,
-                builder.mergingCronExp, redisService);
+                builder.mergingCronExp, redisService, builder.rolloverCronExp, taskIndexer);
         startQueueSpillerThread();
         startWorkingThread();
     }
@@ -89,7 +92,9 @@ public class LocalOutputPipe implements EventOutputPipe {
 
     @Override
     public void send(Event event){
-        pushEventToQueues(persistenceHandler, buffer, overflowedQueue, event);
+        if (taskIndexer.prepareEvent(event)) {
+            pushEventToQueues(persistenceHandler, buffer, overflowedQueue, event);
+        }
     }
 
     public static void pushEventToQueues(PersistenceHandler persistenceHandler, BlockingQueue<Event> eventsQueue, BlockingQueue<Event> overflowedQueue, Event event) {
@@ -165,6 +170,7 @@ public class LocalOutputPipe implements EventOutputPipe {
         private int redisMaxTries = 3;
         private int maximumTasksCacheWeight = 1000000000;
         private int maximumOrphansCacheWeight = 1000000000;
+        private int cacheLockStripes = 1;
         private int searchMaxSize = 1000;
         private int maxBulkIndexFetched = 3;
         private int numOfElasticSearchActionsTries = 3;
@@ -184,6 +190,16 @@ public class LocalOutputPipe implements EventOutputPipe {
         private long maxIndexDocs = 1000000000;
         private String deletionCronExp = "0 0 12 1/1 * ? *";
         private String mergingCronExp = "0 0/1 * 1/1 * ? *";
+        private String rolloverCronExp = "0 0/1 * 1/1 * ? *";
+        private int pluginsParallelism = 4;
+        private long pluginTimeBudgetMillis = 5000;
+        private String rollupTaskNames = "";
+        private long rollupWindowSeconds = 60;
+        private int rollupSampleRate = 0;
+        private int maxChildrenPerParent = 0;
+        private int duplicateStartCheckSampleRate = 0;
+        private boolean deferredParentsResolution = false;
+        private long missingParentsCacheTtlSeconds = 0;
         private String bulkPersistentFetchCronExp = "0 0/10 * 1/1 * ? *";
         private String eventsPersistentFetchCronExp = "0 0/5 * 1/1 * ? *";
         private String persistenceHandlerStrategy = "redis";
@@ -272,6 +288,56 @@ public class LocalOutputPipe implements EventOutputPipe {
             return this;
         }
 
+        public Builder rolloverCronExp(String rolloverCronExp) {
+            this.rolloverCronExp = rolloverCronExp;
+            return this;
+        }
+
+        public Builder pluginsParallelism(int pluginsParallelism) {
+            this.pluginsParallelism = pluginsParallelism;
+            return this;
+        }
+
+        public Builder pluginTimeBudgetMillis(long pluginTimeBudgetMillis) {
+            this.pluginTimeBudgetMillis = pluginTimeBudgetMillis;
+            return this;
+        }
+
+        public Builder rollupTaskNames(String rollupTaskNames) {
+            this.rollupTaskNames = rollupTaskNames;
+            return this;
+        }
+
+        public Builder rollupWindowSeconds(long rollupWindowSeconds) {
+            this.rollupWindowSeconds = rollupWindowSeconds;
+            return this;
+        }
+
+        public Builder rollupSampleRate(int rollupSampleRate) {
+            this.rollupSampleRate = rollupSampleRate;
+            return this;
+        }
+
+        public Builder maxChildrenPerParent(int maxChildrenPerParent) {
+            this.maxChildrenPerParent = maxChildrenPerParent;
+            return this;
+        }
+
+        public Builder duplicateStartCheckSampleRate(int duplicateStartCheckSampleRate) {
+            this.duplicateStartCheckSampleRate = duplicateStartCheckSampleRate;
+            return this;
+        }
+
+        public Builder deferredParentsResolution(boolean deferredParentsResolution) {
+            this.deferredParentsResolution = deferredParentsResolution;
+            return this;
+        }
+
+        public Builder missingParentsCacheTtlSeconds(long missingParentsCacheTtlSeconds) {
+            this.missingParentsCacheTtlSeconds = missingParentsCacheTtlSeconds;
+            return this;
+        }
+
         public Builder numOfElasticSearchActionsTries(int numOfElasticSearchActionsTries) {
             this.numOfElasticSearchActionsTries = numOfElasticSearchActionsTries;
             return this;
@@ -317,6 +383,11 @@ public class LocalOutputPipe implements EventOutputPipe {
             return this;
         }
 
+        public Builder cacheLockStripes(int cacheLockStripes) {
+            this.cacheLockStripes = cacheLockStripes;
+            return this;
+        }
+
         public Builder bulkPersistentFetchCronExp(String bulkPersistentFetchCronExp) {
             this.bulkPersistentFetchCronExp = bulkPersistentFetchCronExp;
             return this;
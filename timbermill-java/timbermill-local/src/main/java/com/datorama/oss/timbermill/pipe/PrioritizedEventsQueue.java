@@ -0,0 +1,245 @@
+package com.datorama.oss.timbermill.pipe;
+
+import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.unit.*;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/*
+ * Bounded events queue that keeps an inner queue per priority lane, so under a backlog error events, root tasks and configured task names
+ * are drained before the rest. Each drain saves a minimal share for every non empty lane, so lower lanes are never starved.
+ */
+public class PrioritizedEventsQueue extends AbstractQueue<Event> implements BlockingQueue<Event> {
+
+    private static final double MIN_LANE_SHARE = 0.1;
+
+    public enum Lane {
+        HIGH, NORMAL, LOW
+    }
+
+    private final Set<String> highPriorityNames;
+    private final Set<String> lowPriorityNames;
+    private final Map<Lane, Queue<QueuedEvent>> lanes = new EnumMap<>(Lane.class);
+    // ConcurrentLinkedQueue.size() walks the whole lane, so every lane keeps its own count
+    private final Map<Lane, AtomicInteger> lanesSizes = new EnumMap<>(Lane.class);
+    private final Semaphore queuedPermits = new Semaphore(0);
+    private final Semaphore freePermits;
+
+    public PrioritizedEventsQueue(int capacity, Collection<String> highPriorityNames, Collection<String> lowPriorityNames) {
+        freePermits = new Semaphore(capacity);
+        this.highPriorityNames = new HashSet<>(highPriorityNames);
+        this.lowPriorityNames = new HashSet<>(lowPriorityNames);
+        for (Lane lane : Lane.values()) {
+            lanes.put(lane, new ConcurrentLinkedQueue<>());
+            lanesSizes.put(lane, new AtomicInteger());
+        }
+    }
+
+    public static PrioritizedEventsQueue fromConfig(int capacity, String highPriorityNames, String lowPriorityNames) {
+        return new PrioritizedEventsQueue(capacity, splitNames(highPriorityNames), splitNames(lowPriorityNames));
+    }
+
+    private static List<String> splitNames(String names) {
+        return names == null ? Collections.emptyList() : Arrays.stream(names.split(","))
+                .map(String::trim).filter(name -> !name.isEmpty()).collect(Collectors.toList());
+    }
+
+    Lane laneOf(Event event) {
+        String name = event.getName();
+        if (name != null && lowPriorityNames.contains(name)) {
+            return Lane.LOW;
+        }
+        boolean error = event instanceof ErrorEvent || (event instanceof SpotEvent && ((SpotEvent) event).getStatus() == TaskStatus.ERROR);
+        boolean rootStart = event instanceof StartEvent && event.getParentId() == null;
+        if (error || rootStart || (name != null && highPriorityNames.contains(name))) {
+            return Lane.HIGH;
+        }
+        return Lane.NORMAL;
+    }
+
+    @Override
+    public boolean offer(Event event) {
+        if (!freePermits.tryAcquire()) {
+            return false;
+        }
+        enqueue(event);
+        return true;
+    }
+
+    @Override
+    public boolean offer(Event event, long timeout, TimeUnit unit) throws InterruptedException {
+        if (!freePermits.tryAcquire(timeout, unit)) {
+            return false;
+        }
+        enqueue(event);
+        return true;
+    }
+
+    @Override
+    public void put(Event event) throws InterruptedException {
+        freePermits.acquire();
+        enqueue(event);
+    }
+
+    private void enqueue(Event event) {
+        Lane lane = laneOf(Objects.requireNonNull(event));
+        lanes.get(lane).add(new QueuedEvent(event));
+        lanesSizes.get(lane).incrementAndGet();
+        queuedPermits.release();
+    }
+
+    @Override
+    public Event poll() {
+        return queuedPermits.tryAcquire() ? dequeue() : null;
+    }
+
+    @Override
+    public Event poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return queuedPermits.tryAcquire(timeout, unit) ? dequeue() : null;
+    }
+
+    @Override
+    public Event take() throws InterruptedException {
+        queuedPermits.acquire();
+        return dequeue();
+    }
+
+    // Must hold a queued permit, every permit is released only after its event was added to a lane
+    private Event dequeue() {
+        QueuedEvent queuedEvent = pollInPriorityOrder();
+        freePermits.release();
+        return queuedEvent.event;
+    }
+
+    private QueuedEvent pollLane(Lane lane) {
+        QueuedEvent queuedEvent = lanes.get(lane).poll();
+        if (queuedEvent != null) {
+            lanesSizes.get(lane).decrementAndGet();
+        }
+        return queuedEvent;
+    }
+
+    private QueuedEvent pollInPriorityOrder() {
+        for (Lane lane : Lane.values()) {
+            QueuedEvent queuedEvent = pollLane(lane);
+            if (queuedEvent != null) {
+                return queuedEvent;
+            }
+        }
+        throw new IllegalStateException("Events queue permits are out of sync with its lanes");
+    }
+
+    @Override
+    public int drainTo(Collection<? super Event> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Event> c, int maxElements) {
+        int queued = queuedPermits.drainPermits();
+        int toDrain = Math.min(queued, maxElements);
+        queuedPermits.release(queued - toDrain);
+        if (toDrain <= 0) {
+            return 0;
+        }
+
+        Map<Lane, Integer> quotas = getLanesQuotas(toDrain);
+        long now = System.currentTimeMillis();
+        int drained = 0;
+        for (Map.Entry<Lane, Integer> entry : quotas.entrySet()) {
+            int laneDrained = 0;
+            QueuedEvent queuedEvent;
+            while (laneDrained < entry.getValue() && (queuedEvent = pollLane(entry.getKey())) != null) {
+                if (laneDrained == 0) {
+                    KamonConstants.EVENTS_LANE_LAG_HISTOGRAM.withTag("lane", entry.getKey().name()).record(now - queuedEvent.queuedMillis);
+                }
+                c.add(queuedEvent.event);
+                laneDrained++;
+            }
+            drained += laneDrained;
+        }
+        // Quotas are computed from the lanes sizes, which other threads keep adding to, so drain anything that is still owed
+        drained += drainInPriorityOrder(c, toDrain - drained);
+        freePermits.release(drained);
+        return drained;
+    }
+
+    private int drainInPriorityOrder(Collection<? super Event> c, int amount) {
+        int drained = 0;
+        while (drained < amount) {
+            c.add(pollInPriorityOrder().event);
+            drained++;
+        }
+        return drained;
+    }
+
+    // Every non empty lane first gets its minimal share, the rest is given by priority
+    private Map<Lane, Integer> getLanesQuotas(int toDrain) {
+        Map<Lane, Integer> sizes = new EnumMap<>(Lane.class);
+        lanesSizes.forEach((lane, size) -> sizes.put(lane, Math.max(0, size.get())));
+
+        int minShare = Math.max(1, (int) (toDrain * MIN_LANE_SHARE));
+        Map<Lane, Integer> quotas = new EnumMap<>(Lane.class);
+        int left = toDrain;
+        for (Lane lane : Lane.values()) {
+            int quota = Math.min(Math.min(minShare, sizes.get(lane)), left);
+            quotas.put(lane, quota);
+            left -= quota;
+        }
+        for (Lane lane : Lane.values()) {
+            int extra = Math.min(sizes.get(lane) - quotas.get(lane), left);
+            if (extra > 0) {
+                quotas.put(lane, quotas.get(lane) + extra);
+                left -= extra;
+            }
+        }
+        return quotas;
+    }
+
+    @Override
+    public Event peek() {
+        for (Queue<QueuedEvent> lane : lanes.values()) {
+            QueuedEvent queuedEvent = lane.peek();
+            if (queuedEvent != null) {
+                return queuedEvent.event;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return queuedPermits.availablePermits();
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return freePermits.availablePermits();
+    }
+
+    @Override
+    public Iterator<Event> iterator() {
+        List<Iterator<Event>> iterators = Lists.newArrayList();
+        for (Queue<QueuedEvent> lane : lanes.values()) {
+            iterators.add(Iterators.transform(Iterators.unmodifiableIterator(lane.iterator()), queuedEvent -> queuedEvent.event));
+        }
+        return Iterators.concat(iterators.iterator());
+    }
+
+    private static class QueuedEvent {
+        private final Event event;
+        private final long queuedMillis = System.currentTimeMillis();
+
+        QueuedEvent(Event event) {
+            this.event = event;
+        }
+    }
+}
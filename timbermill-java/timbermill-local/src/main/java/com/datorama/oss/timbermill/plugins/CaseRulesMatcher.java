@@ -0,0 +1,100 @@
+package com.datorama.oss.timbermill.plugins;
+
+import java.util.*;
+
+import com.datorama.oss.timbermill.plugins.SwitchCasePlugin.CaseRule;
+
+/*
+ * Aho-Corasick automaton over the patterns of all the rules of a switch case.
+ * Finds the first rule (by order) with a pattern contained in the text in a single pass over the text.
+ */
+class CaseRulesMatcher {
+
+	static final int NO_MATCH = -1;
+	private static final int NO_RULE = Integer.MAX_VALUE;
+
+	private final Map<Character, Integer>[] transitions;
+	private final int[] failures;
+	// Lowest rule index of the patterns ending at the node or at any of its suffixes
+	private final int[] firstRules;
+	// A rule without patterns matches any text, rules after it can never be chosen
+	private final int catchAllRule;
+
+	@SuppressWarnings("unchecked")
+	CaseRulesMatcher(List<CaseRule> rules) {
+		List<Map<Character, Integer>> trie = new ArrayList<>();
+		List<Integer> nodeRules = new ArrayList<>();
+		trie.add(new HashMap<>());
+		nodeRules.add(NO_RULE);
+
+		int catchAll = NO_RULE;
+		for (int rule = 0; rule < rules.size() && catchAll == NO_RULE; rule++) {
+			Collection<String> patterns = rules.get(rule).getMatch();
+			if (patterns == null) {
+				catchAll = rule;
+				continue;
+			}
+			for (String pattern : patterns) {
+				if (pattern.isEmpty()) {
+					catchAll = rule;
+					break;
+				}
+				int node = 0;
+				for (int i = 0; i < pattern.length(); i++) {
+					Integer next = trie.get(node).get(pattern.charAt(i));
+					if (next == null) {
+						next = trie.size();
+						trie.add(new HashMap<>());
+						nodeRules.add(NO_RULE);
+						trie.get(node).put(pattern.charAt(i), next);
+					}
+					node = next;
+				}
+				nodeRules.set(node, Math.min(nodeRules.get(node), rule));
+			}
+		}
+		catchAllRule = catchAll;
+
+		int size = trie.size();
+		transitions = trie.toArray(new Map[size]);
+		failures = new int[size];
+		firstRules = new int[size];
+		firstRules[0] = NO_RULE;
+
+		// Breadth first so a node's failure target, which is shallower, is always done before it
+		Deque<Integer> queue = new ArrayDeque<>();
+		for (int child : transitions[0].values()) {
+			firstRules[child] = nodeRules.get(child);
+			queue.add(child);
+		}
+		while (!queue.isEmpty()) {
+			int node = queue.poll();
+			for (Map.Entry<Character, Integer> entry : transitions[node].entrySet()) {
+				int child = entry.getValue();
+				failures[child] = step(failures[node], entry.getKey());
+				firstRules[child] = Math.min(nodeRules.get(child), firstRules[failures[child]]);
+				queue.add(child);
+			}
+		}
+	}
+
+	// Returns the index of the first matching rule, or NO_MATCH
+	int firstMatchingRule(String text) {
+		int best = catchAllRule;
+		int state = 0;
+		for (int i = 0; i < text.length() && best > 0; i++) {
+			state = step(state, text.charAt(i));
+			best = Math.min(best, firstRules[state]);
+		}
+		return best == NO_RULE ? NO_MATCH : best;
+	}
+
+	private int step(int state, char c) {
+		Integer next = transitions[state].get(c);
+		while (next == null && state != 0) {
+			state = failures[state];
+			next = transitions[state].get(c);
+		}
+		return next == null ? 0 : next;
+	}
+}
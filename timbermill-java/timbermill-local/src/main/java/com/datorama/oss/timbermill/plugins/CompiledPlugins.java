@@ -0,0 +1,62 @@
+package com.datorama.oss.timbermill.plugins;
+
+import java.util.*;
+
+import com.datorama.oss.timbermill.unit.Event;
+import com.datorama.oss.timbermill.unit.Task;
+
+/*
+ * Plugins indexed by the task name they apply to, so each plugin only sees the events of its own tasks
+ * and the task name of every event is resolved once per batch.
+ */
+public class CompiledPlugins {
+
+	private final Collection<TaskLogPlugin> plugins;
+	private final Set<String> taskNames = new HashSet<>();
+
+	CompiledPlugins(Collection<TaskLogPlugin> plugins) {
+		this.plugins = plugins;
+		for (TaskLogPlugin plugin : plugins) {
+			plugin.compile();
+			if (plugin.getTaskName() != null) {
+				taskNames.add(plugin.getTaskName());
+			}
+		}
+	}
+
+	public Collection<TaskLogPlugin> getPlugins() {
+		return plugins;
+	}
+
+	// Groups the batch's events by task name, only names that have plugins are kept
+	public Map<String, List<Event>> indexByTaskName(Collection<Event> events) {
+		if (taskNames.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		Map<String, List<Event>> eventsByTaskName = new HashMap<>();
+		for (Event event : events) {
+			String name = Task.getNameFromId(event.getName(), event.getTaskId());
+			if (taskNames.contains(name)) {
+				eventsByTaskName.computeIfAbsent(name, k -> new ArrayList<>()).add(event);
+			}
+		}
+		return eventsByTaskName;
+	}
+
+	// The events a plugin should be applied on, the whole batch for plugins that aren't bound to a task name
+	List<Event> getPluginEvents(TaskLogPlugin plugin, Collection<Event> events, Map<String, List<Event>> eventsByTaskName) {
+		String taskName = plugin.getTaskName();
+		if (taskName == null) {
+			return events instanceof List ? (List<Event>) events : new ArrayList<>(events);
+		}
+		return eventsByTaskName.getOrDefault(taskName, Collections.emptyList());
+	}
+
+	void apply(TaskLogPlugin plugin, List<Event> pluginEvents) {
+		if (plugin.getTaskName() == null) {
+			plugin.apply(pluginEvents);
+		} else {
+			plugin.applyOnMatchedEvents(pluginEvents);
+		}
+	}
+}
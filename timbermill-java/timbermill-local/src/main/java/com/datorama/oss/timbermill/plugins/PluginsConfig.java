@@ -13,6 +13,10 @@ import java.util.Collection;
 public class PluginsConfig {
 	private static final Logger LOG = LoggerFactory.getLogger(PluginsConfig.class);
 
+	public static CompiledPlugins compilePluginsFromJson(String pluginsJson) {
+		return new CompiledPlugins(initPluginsFromJson(pluginsJson));
+	}
+
 	public static Collection<TaskLogPlugin> initPluginsFromJson(String pluginsJson) {
 		GsonBuilder gsonBuilder = new GsonBuilder();
 
@@ -0,0 +1,157 @@
+package com.datorama.oss.timbermill.plugins;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datorama.oss.timbermill.common.KamonConstants;
+import com.datorama.oss.timbermill.unit.Event;
+import com.google.common.collect.Lists;
+
+import kamon.metric.Timer;
+
+/*
+ * Runs the plugins on a dedicated fork/join pool, one plugin after the other so plugins never touch the same event concurrently.
+ * A plugin's events are split into chunks that run in parallel, chunks that didn't start before the plugin's time budget ran out are skipped.
+ * Plugins that keep failing or running out of time are skipped for a while (circuit breaker).
+ */
+public class PluginsExecutor {
+
+	private static final Logger LOG = LoggerFactory.getLogger(PluginsExecutor.class);
+	private static final int MIN_CHUNK_SIZE = 500;
+	private static final int FAILURES_TO_OPEN_CIRCUIT = 3;
+	private static final long OPEN_CIRCUIT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+	private final CompiledPlugins plugins;
+	private final ForkJoinPool pool;
+	private final int parallelism;
+	private final long timeBudgetMillis;
+	private final Map<TaskLogPlugin, CircuitBreaker> circuitBreakers = new IdentityHashMap<>();
+
+	public PluginsExecutor(CompiledPlugins plugins, int parallelism, long timeBudgetMillis) {
+		if (parallelism < 1) {
+			throw new RuntimeException("Plugins parallelism property should be larger than 0");
+		}
+		if (timeBudgetMillis < 1) {
+			throw new RuntimeException("Plugin time budget property should be larger than 0");
+		}
+		this.plugins = plugins;
+		this.parallelism = parallelism;
+		this.timeBudgetMillis = timeBudgetMillis;
+		for (TaskLogPlugin plugin : plugins.getPlugins()) {
+			circuitBreakers.put(plugin, new CircuitBreaker());
+		}
+		pool = new ForkJoinPool(parallelism, pool -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName("timbermill-plugins-" + thread.getPoolIndex());
+			return thread;
+		}, null, false);
+	}
+
+	public void apply(Collection<Event> events) {
+		Map<String, List<Event>> eventsByTaskName = plugins.indexByTaskName(events);
+		for (TaskLogPlugin plugin : plugins.getPlugins()) {
+			CircuitBreaker circuitBreaker = circuitBreakers.get(plugin);
+			if (circuitBreaker.isOpen()) {
+				KamonConstants.PLUGIN_SKIPPED_COUNTER.withTag("plugin", plugin.getName()).increment();
+				continue;
+			}
+			Timer.Started started = KamonConstants.PLUGIN_DURATION_TIMER.withTag("plugin", plugin.getName()).start();
+			boolean success;
+			try {
+				success = applyPlugin(plugin, events, eventsByTaskName);
+			} catch (Exception e) {
+				LOG.error("Error in plugin " + plugin, e);
+				success = false;
+			}
+			started.stop();
+			if (success) {
+				circuitBreaker.onSuccess();
+			} else {
+				KamonConstants.PLUGIN_FAILURES_COUNTER.withTag("plugin", plugin.getName()).increment();
+				if (circuitBreaker.onFailure()) {
+					LOG.warn("Plugin {} failed {} times in a row, skipping it for {} seconds", plugin, FAILURES_TO_OPEN_CIRCUIT, TimeUnit.MILLISECONDS.toSeconds(OPEN_CIRCUIT_MILLIS));
+				}
+			}
+		}
+	}
+
+	public void close() {
+		pool.shutdownNow();
+	}
+
+	// Returns false if the plugin ran out of its time budget
+	private boolean applyPlugin(TaskLogPlugin plugin, Collection<Event> events, Map<String, List<Event>> eventsByTaskName) {
+		List<Event> pluginEvents = plugins.getPluginEvents(plugin, events, eventsByTaskName);
+		if (pluginEvents.isEmpty()) {
+			return true;
+		}
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeBudgetMillis);
+		List<List<Event>> chunks = plugin.supportsChunks() ? Lists.partition(pluginEvents, chunkSize(pluginEvents.size())) : Collections.singletonList(pluginEvents);
+
+		List<ForkJoinTask<Boolean>> tasks = new ArrayList<>(chunks.size());
+		for (List<Event> chunk : chunks) {
+			tasks.add(pool.submit(() -> {
+				if (System.nanoTime() > deadline) {
+					return false;
+				}
+				plugins.apply(plugin, chunk);
+				return true;
+			}));
+		}
+		// All chunks are joined, even after the budget ran out, so no plugin is still changing events once indexing continues
+		int skippedChunks = 0;
+		RuntimeException failure = null;
+		for (ForkJoinTask<Boolean> task : tasks) {
+			try {
+				if (!task.join()) {
+					skippedChunks++;
+				}
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		if (skippedChunks > 0) {
+			LOG.warn("Plugin {} ran out of its {}ms time budget, skipped {}/{} chunks", plugin, timeBudgetMillis, skippedChunks, chunks.size());
+			return false;
+		}
+		return System.nanoTime() <= deadline;
+	}
+
+	private int chunkSize(int eventsAmount) {
+		return Math.max(MIN_CHUNK_SIZE, (eventsAmount + parallelism - 1) / parallelism);
+	}
+
+	private static class CircuitBreaker {
+		private int consecutiveFailures = 0;
+		private long openUntil = 0;
+
+		boolean isOpen() {
+			return System.currentTimeMillis() < openUntil;
+		}
+
+		void onSuccess() {
+			consecutiveFailures = 0;
+			openUntil = 0;
+		}
+
+		// Returns true if the circuit was opened, a failure on the first run after the circuit was open opens it right away
+		boolean onFailure() {
+			consecutiveFailures++;
+			if (consecutiveFailures >= FAILURES_TO_OPEN_CIRCUIT || openUntil > 0) {
+				consecutiveFailures = 0;
+				openUntil = System.currentTimeMillis() + OPEN_CIRCUIT_MILLIS;
+				return true;
+			}
+			return false;
+		}
+	}
+}
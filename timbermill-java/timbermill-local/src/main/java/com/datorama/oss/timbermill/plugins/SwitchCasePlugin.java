@@ -4,7 +4,10 @@ import com.datorama.oss.timbermill.unit.Event;
 import com.google.common.collect.Maps;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
 
 public class SwitchCasePlugin extends TaskLogPlugin {
 
@@ -13,6 +16,8 @@ public class SwitchCasePlugin extends TaskLogPlugin {
 	private final String searchField;
 	private final String outputAttribute;
 	private final Collection<CaseRule> switchCase;
+	private transient List<CaseRule> compiledCases;
+	private transient CaseRulesMatcher caseRulesMatcher;
 
 	public SwitchCasePlugin(String name, TaskMatcher taskMatcher, String searchField, String outputAttribute, Collection<CaseRule> switchCase) {
 		super(name);
@@ -20,27 +25,53 @@ public class SwitchCasePlugin extends TaskLogPlugin {
 		this.searchField = searchField;
 		this.outputAttribute = outputAttribute;
 		this.switchCase = switchCase;
+		compile();
 	}
 
 	@Override
 	public void apply(Collection<Event> events) {
-		events.stream()
+		applyOnMatchedEvents(events.stream()
 			.filter(e -> e.getText() != null && e.getText().containsKey(searchField))
 			.filter(e -> taskMatcher.matches(e))
-			.forEach(e -> {
-				String searchText = e.getText().get(searchField);
-				if (searchText != null) {
-					for (CaseRule caseRule : switchCase) {
-						if (caseRule.matches(searchText)) {
-							if (e.getStrings() == null){
-								e.setStrings(Maps.newHashMap());
-							}
-							e.getStrings().put(outputAttribute, caseRule.getOutput());
-							break;
-						}
+			.collect(Collectors.toList()));
+	}
+
+	@Override
+	String getTaskName() {
+		return taskMatcher.getName();
+	}
+
+	@Override
+	protected boolean supportsChunks() {
+		return true;
+	}
+
+	@Override
+	void compile() {
+		compiledCases = new ArrayList<>(switchCase);
+		caseRulesMatcher = new CaseRulesMatcher(compiledCases);
+	}
+
+	@Override
+	void applyOnMatchedEvents(Collection<Event> events) {
+		if (caseRulesMatcher == null) {
+			compile();
+		}
+		for (Event e : events) {
+			if (e.getText() == null) {
+				continue;
+			}
+			String searchText = e.getText().get(searchField);
+			if (searchText != null) {
+				int rule = caseRulesMatcher.firstMatchingRule(searchText);
+				if (rule != CaseRulesMatcher.NO_MATCH) {
+					if (e.getStrings() == null){
+						e.setStrings(Maps.newHashMap());
 					}
+					e.getStrings().put(outputAttribute, compiledCases.get(rule).getOutput());
 				}
-			});
+			}
+		}
 	}
 
 	public static class CaseRule implements Serializable{
@@ -57,17 +88,8 @@ public class SwitchCasePlugin extends TaskLogPlugin {
 			this.output = output;
 		}
 
-		boolean matches(String searchText) {
-			if (match == null) {
-				return true;
-			}
-
-			for (String searchPattern : match) {
-				if (searchText.contains(searchPattern)) {
-					return true;
-				}
-			}
-			return false;
+		Collection<String> getMatch() {
+			return match;
 		}
 
 		String getOutput() {
@@ -18,6 +18,25 @@ public abstract class TaskLogPlugin implements Serializable{
 
 	public abstract void apply (Collection<Event> events);
 
+	// Name of the tasks the plugin applies to, plugins without one are applied on all the events
+	String getTaskName() {
+		return null;
+	}
+
+	// Called once after the plugin is loaded, before it is applied
+	void compile() {
+	}
+
+	// Plugins that handle every event on its own can be applied on chunks of a batch in parallel
+	protected boolean supportsChunks() {
+		return false;
+	}
+
+	// Applies the plugin on events that are already known to be of getTaskName() tasks
+	void applyOnMatchedEvents(Collection<Event> events) {
+		apply(events);
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -20,4 +20,8 @@ public class TaskMatcher implements Serializable{
 		return this.name.equals(name);
 	}
 
+	String getName() {
+		return name;
+	}
+
 }
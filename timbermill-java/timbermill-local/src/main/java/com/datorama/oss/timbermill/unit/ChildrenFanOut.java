@@ -0,0 +1,50 @@
+package com.datorama.oss.timbermill.unit;
+
+/*
+ * Children of one name under one parent, kept in the cache to cap the parent's fan-out.
+ * Children beyond the cap are only aggregated here instead of being indexed.
+ */
+public class ChildrenFanOut {
+
+    private long childrenCount;
+    private long foldedCount;
+    private long foldedErrorCount;
+    private long foldedDurationSum;
+    private long foldedDurationMax;
+
+    public ChildrenFanOut() {
+    }
+
+    public long addChild() {
+        return ++childrenCount;
+    }
+
+    public void addFolded(long duration, boolean error) {
+        foldedCount++;
+        if (error) {
+            foldedErrorCount++;
+        }
+        foldedDurationSum += duration;
+        foldedDurationMax = Math.max(foldedDurationMax, duration);
+    }
+
+    public long getChildrenCount() {
+        return childrenCount;
+    }
+
+    public long getFoldedCount() {
+        return foldedCount;
+    }
+
+    public long getFoldedErrorCount() {
+        return foldedErrorCount;
+    }
+
+    public long getFoldedDurationSum() {
+        return foldedDurationSum;
+    }
+
+    public long getFoldedDurationMax() {
+        return foldedDurationMax;
+    }
+}
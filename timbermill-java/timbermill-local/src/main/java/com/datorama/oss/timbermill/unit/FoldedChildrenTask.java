@@ -0,0 +1,42 @@
+package com.datorama.oss.timbermill.unit;
+
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.datorama.oss.timbermill.common.TimbermillDatesUtils;
+import org.elasticsearch.action.DocWriteRequest;
+
+/*
+ * Aggregate of the children of one name folded under a parent. Each batch writes only the children it folded, and they are added to the parent's aggregate,
+ * while the children count is the total seen so far, so the highest one written wins.
+ */
+public class FoldedChildrenTask extends Task {
+
+    private static final List<String> SUMMED_METRICS = Arrays.asList("foldedCount", "foldedErrorCount", "foldedDurationSum");
+    private static final List<String> MAX_METRICS = Arrays.asList("childrenCount", "foldedDurationMax");
+
+    public FoldedChildrenTask(String env, String parentId, String childrenName, long childrenCount, ChildrenFanOut batchFolded, long daysRotation) {
+        setName("metadata_timbermill_folded_children");
+        setEnv(env);
+        setParentId(parentId);
+        setStatus(TaskStatus.SUCCESS);
+        setStartTime(ZonedDateTime.now());
+        setDateToDelete(TimbermillDatesUtils.getDateToDeleteWithDefault(daysRotation));
+        getString().put("childrenName", childrenName);
+
+        Map<String, Number> metric = getMetric();
+        metric.put("childrenCount", childrenCount);
+        metric.put("foldedCount", batchFolded.getFoldedCount());
+        metric.put("foldedErrorCount", batchFolded.getFoldedErrorCount());
+        metric.put("foldedDurationSum", batchFolded.getFoldedDurationSum());
+        metric.put("foldedDurationMax", batchFolded.getFoldedDurationMax());
+    }
+
+    @Override
+    public DocWriteRequest<?> getWriteRequest(String index, String taskId) {
+        return getMergeMetricsRequest(index, taskId, SUMMED_METRICS, MAX_METRICS, Collections.emptyList());
+    }
+}
@@ -26,6 +26,10 @@ public class HeartbeatTask extends Task {
             taskMetrics.put("avgSubmitDuration", eventMetrics.get(ClientHeartbeater.AVG_SUBMIT_DURATION));
             taskMetrics.put("maxSubmitDuration", eventMetrics.get(ClientHeartbeater.MAX_SUBMIT_DURATION));
             taskMetrics.put("outputBufferSize", eventMetrics.get(ClientHeartbeater.OUTPUT_BUFFER_SIZE));
+            if (eventMetrics.containsKey(ClientHeartbeater.BATCH_SIZE)) {
+                taskMetrics.put("batchSize", eventMetrics.get(ClientHeartbeater.BATCH_SIZE));
+                taskMetrics.put("batchLingerMillis", eventMetrics.get(ClientHeartbeater.BATCH_LINGER_MILLIS));
+            }
         }
     }
 }
@@ -0,0 +1,58 @@
+package com.datorama.oss.timbermill.unit;
+
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.datorama.oss.timbermill.common.TimbermillDatesUtils;
+import org.elasticsearch.action.DocWriteRequest;
+
+/*
+ * Summary of a rollup window. Every server and every late flush of the same window writes to the same document, and the counts are added up.
+ * The duration percentiles of merged partial summaries are the highest of the partials', and the top values are the first partial's.
+ */
+public class RollupTask extends Task {
+
+    private static final List<String> SUMMED_METRICS = Arrays.asList("count", "errorCount", "durationSum");
+    private static final List<String> MAX_METRICS = Arrays.asList("durationMax", "durationP50", "durationP90", "durationP99");
+    private static final List<String> MIN_METRICS = Collections.singletonList("durationMin");
+
+    public RollupTask(String env, String taskName, ZonedDateTime windowStart, ZonedDateTime windowEnd, long daysRotation) {
+        setName("metadata_timbermill_rollup");
+        setEnv(env);
+        setStatus(TaskStatus.SUCCESS);
+        setStartTime(windowStart);
+        setEndTime(windowEnd);
+        setDuration(windowEnd.toInstant().toEpochMilli() - windowStart.toInstant().toEpochMilli());
+        setDateToDelete(TimbermillDatesUtils.getDateToDeleteWithDefault(daysRotation));
+        getString().put("taskName", taskName);
+    }
+
+    public void setSummary(long count, long errorCount, long durationMin, long durationMax, long durationSum, long durationP50, long durationP90, long durationP99) {
+        Map<String, Number> metric = getMetric();
+        metric.put("count", count);
+        metric.put("errorCount", errorCount);
+        metric.put("durationMin", durationMin);
+        metric.put("durationMax", durationMax);
+        metric.put("durationSum", durationSum);
+        metric.put("durationP50", durationP50);
+        metric.put("durationP90", durationP90);
+        metric.put("durationP99", durationP99);
+    }
+
+    public void setTopValues(String key, String topValues) {
+        getText().put("top_" + key, topValues);
+    }
+
+    // Deterministic, so partial summaries of the same window are written to the same document
+    public String getRollupId() {
+        return getEnv() + "_" + getString().get("taskName") + "_" + getStartTime().toInstant().toEpochMilli() + "_rollup";
+    }
+
+    @Override
+    public DocWriteRequest<?> getWriteRequest(String index, String taskId) {
+        return getMergeMetricsRequest(index, taskId, SUMMED_METRICS, MAX_METRICS, MIN_METRICS);
+    }
+}
@@ -3,6 +3,8 @@ package com.datorama.oss.timbermill.unit;
 import com.datorama.oss.timbermill.ElasticsearchClient;
 import com.datorama.oss.timbermill.common.ElasticsearchUtil;
 import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.script.Script;
@@ -43,6 +45,8 @@ public class Task {
 	private Map<String, String> text = new HashMap<>();
 	private Map<String, Number> metric = new HashMap<>();
 	protected Boolean orphan;
+	// Set when no earlier state of the task was seen, so the task is written as a new document instead of through the stored script
+	private transient boolean firstWrite;
 
 	public Task() {
 	}
@@ -306,6 +310,30 @@ public class Task {
 		this.orphan = orphan;
 	}
 
+	public boolean isFirstWrite() {
+		return firstWrite;
+	}
+
+	public void setFirstWrite(boolean firstWrite) {
+		this.firstWrite = firstWrite;
+	}
+
+	/*
+	 * A task's first write creates its document as is, which is what the scripted upsert does for a missing document without running the script.
+	 * If the document already exists the create fails with a conflict, and it is retried as a scripted upsert (see IndexRetryManager).
+	 */
+	public DocWriteRequest<?> getWriteRequest(String index, String taskId) {
+		if (!firstWrite) {
+			return getUpdateRequest(index, taskId);
+		}
+		if (meta == null || meta.getTaskBegin() == null){
+			throw new RuntimeException("No taskBegin");
+		}
+		return new IndexRequest(this.index == null ? index : this.index, ElasticsearchClient.TYPE, taskId)
+				.source(ElasticsearchClient.GSON.toJson(this), XContentType.JSON)
+				.opType(DocWriteRequest.OpType.CREATE);
+	}
+
 	public UpdateRequest getUpdateRequest(String index, String taskId) {
 		if (meta == null || meta.getTaskBegin() == null){
 			throw new RuntimeException("No taskBegin");
@@ -345,6 +373,31 @@ public class Task {
 		return updateRequest;
 	}
 
+	// Partial aggregates with the same id are merged into one document, whichever of them is written first creates it
+	protected UpdateRequest getMergeMetricsRequest(String index, String taskId, Collection<String> summedMetrics, Collection<String> maxMetrics, Collection<String> minMetrics) {
+		UpdateRequest updateRequest = new UpdateRequest(this.index == null ? index : this.index, ElasticsearchClient.TYPE, taskId);
+		updateRequest.upsert(ElasticsearchClient.GSON.toJson(this), XContentType.JSON);
+		updateRequest = updateRequest.retryOnConflict(RETRIES_ON_CONFLICT);
+
+		Map<String, Object> params = new HashMap<>();
+		params.put("sum", getMetricsSubset(summedMetrics));
+		params.put("max", getMetricsSubset(maxMetrics));
+		params.put("min", getMetricsSubset(minMetrics));
+		updateRequest.script(new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, ElasticsearchUtil.MERGE_METRICS_SCRIPT, params));
+		return updateRequest;
+	}
+
+	private Map<String, Number> getMetricsSubset(Collection<String> keys) {
+		Map<String, Number> subset = new HashMap<>();
+		for (String key : keys) {
+			Number value = metric.get(key);
+			if (value != null) {
+				subset.put(key, value);
+			}
+		}
+		return subset;
+	}
+
 	@Override public String toString() {
 		return "Task{" +
 				"env='" + env + '\'' +
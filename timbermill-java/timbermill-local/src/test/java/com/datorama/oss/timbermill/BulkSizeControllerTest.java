@@ -0,0 +1,74 @@
+package com.datorama.oss.timbermill;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class BulkSizeControllerTest {
+
+    private static final String INDEX = "timbermill2-test-000001";
+
+    @Test
+    public void rejectionsHalveLimitsOncePerCongestionTest() {
+        BulkSizeController controller = new BulkSizeController(100000, 4);
+        long firstStart = controller.acquire();
+        long secondStart = controller.acquire();
+
+        controller.release(firstStart, rejectedResponse());
+        assertEquals(50000, controller.getBulkSize());
+        assertEquals(2, controller.getConcurrency());
+
+        // Was already in flight when the limits were lowered
+        controller.release(secondStart, rejectedResponse());
+        assertEquals(50000, controller.getBulkSize());
+        assertEquals(2, controller.getConcurrency());
+
+        controller.release(controller.acquire(), Collections.emptyList());
+        assertEquals(25000, controller.getBulkSize());
+        assertEquals(1, controller.getConcurrency());
+    }
+
+    @Test
+    public void healthyBulksGrowLimitsBackToConfiguredTest() {
+        BulkSizeController controller = new BulkSizeController(100000, 4);
+        controller.release(controller.acquire(), rejectedResponse());
+        controller.release(controller.acquire(), rejectedResponse());
+        assertEquals(25000, controller.getBulkSize());
+        assertEquals(1, controller.getConcurrency());
+
+        controller.release(controller.acquire(), healthyResponse(10));
+        assertEquals(35000, controller.getBulkSize());
+        assertEquals(2, controller.getConcurrency());
+
+        for (int i = 0; i < 20; i++) {
+            controller.release(controller.acquire(), healthyResponse(10));
+        }
+        assertEquals(100000, controller.getBulkSize());
+        assertEquals(4, controller.getConcurrency());
+    }
+
+    @Test
+    public void slowBulkLowersLimitsTest() {
+        BulkSizeController controller = new BulkSizeController(100000, 4);
+        controller.release(controller.acquire(), healthyResponse(100));
+        controller.release(controller.acquire(), healthyResponse(5000));
+        assertEquals(50000, controller.getBulkSize());
+        assertEquals(2, controller.getConcurrency());
+    }
+
+    private static List<BulkResponse> rejectedResponse() {
+        BulkItemResponse.Failure failure = new BulkItemResponse.Failure(INDEX, "_doc", "id", new EsRejectedExecutionException("rejected execution"));
+        return Collections.singletonList(new BulkResponse(new BulkItemResponse[]{ new BulkItemResponse(0, DocWriteRequest.OpType.UPDATE, failure) }, 10));
+    }
+
+    private static List<BulkResponse> healthyResponse(long tookMillis) {
+        return Collections.singletonList(new BulkResponse(new BulkItemResponse[0], tookMillis));
+    }
+}
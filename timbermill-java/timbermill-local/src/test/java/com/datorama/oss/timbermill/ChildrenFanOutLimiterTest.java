@@ -0,0 +1,99 @@
+package com.datorama.oss.timbermill;
+
+import com.datorama.oss.timbermill.common.cache.AbstractCacheHandler;
+import com.datorama.oss.timbermill.common.cache.CacheConfig;
+import com.datorama.oss.timbermill.common.cache.CacheHandlerUtil;
+import com.datorama.oss.timbermill.unit.*;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.junit.Test;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ChildrenFanOutLimiterTest {
+
+    private static final String ENV = "env";
+    private static final String PARENT_ID = "parent";
+    private static final String CHILD = "child";
+
+    @Test
+    public void childrenBeyondCapAreFoldedTest() {
+        AbstractCacheHandler cacheHandler = CacheHandlerUtil.getCacheHandler("local", new CacheConfig(null, 0, 10000000, 10000000));
+        ChildrenFanOutLimiter limiter = new ChildrenFanOutLimiter(2, 1);
+
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            events.add(spotEvent(TaskStatus.SUCCESS));
+        }
+        List<Event> foldedEvents = new ArrayList<>();
+        Map<String, FoldedChildrenTask> aggregates = limiter.fold(events, ENV, cacheHandler, foldedEvents);
+        assertEquals(2, events.size());
+        // Handed back to be cached, so their children in later batches are enriched
+        assertEquals(1, foldedEvents.size());
+        assertFalse(events.contains(foldedEvents.get(0)));
+        FoldedChildrenTask aggregate = aggregates.get(PARENT_ID + "_" + CHILD + "_folded");
+        assertEquals(PARENT_ID, aggregate.getParentId());
+        assertEquals(3L, aggregate.getMetric().get("childrenCount"));
+        assertEquals(1L, aggregate.getMetric().get("foldedCount"));
+
+        // The children count is kept in the cache between batches
+        events = new ArrayList<>();
+        events.add(spotEvent(TaskStatus.ERROR));
+        Event openChild = new StartEvent(Event.generateTaskId(CHILD), CHILD, LogParams.create(), PARENT_ID);
+        events.add(openChild);
+        foldedEvents = new ArrayList<>();
+        aggregate = limiter.fold(events, ENV, cacheHandler, foldedEvents).get(PARENT_ID + "_" + CHILD + "_folded");
+        assertEquals(1, events.size());
+        assertSame(openChild, events.get(0));
+        assertEquals(1, foldedEvents.size());
+        assertEquals(5L, aggregate.getMetric().get("childrenCount"));
+        // Only the children folded in the batch, they are added to the parent's aggregate document
+        assertEquals(1L, aggregate.getMetric().get("foldedCount"));
+        assertEquals(1L, aggregate.getMetric().get("foldedErrorCount"));
+        Map<String, Object> params = ((UpdateRequest) aggregate.getWriteRequest("index", PARENT_ID + "_" + CHILD + "_folded")).script().getParams();
+        assertEquals(1L, ((Map<?, ?>) params.get("sum")).get("foldedCount"));
+        assertEquals(5L, ((Map<?, ?>) params.get("max")).get("childrenCount"));
+    }
+
+    @Test
+    public void aggregatesAreWrittenToParentIndexTest() {
+        AbstractCacheHandler cacheHandler = CacheHandlerUtil.getCacheHandler("local", new CacheConfig(null, 0, 10000000, 10000000));
+        LocalTask parent = new LocalTask();
+        parent.setIndex("timbermill2-env-000001");
+        cacheHandler.logPushToTasksCache(Collections.singletonMap(PARENT_ID, parent), "test");
+        ChildrenFanOutLimiter limiter = new ChildrenFanOutLimiter(1, 1);
+
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            events.add(spotEvent(TaskStatus.SUCCESS));
+        }
+        FoldedChildrenTask aggregate = limiter.fold(events, ENV, cacheHandler, new ArrayList<>()).get(PARENT_ID + "_" + CHILD + "_folded");
+        assertEquals("timbermill2-env-000001", aggregate.getIndex());
+    }
+
+    @Test
+    public void childrenUnderCapAreNotFoldedTest() {
+        AbstractCacheHandler cacheHandler = CacheHandlerUtil.getCacheHandler("local", new CacheConfig(null, 0, 10000000, 10000000));
+        ChildrenFanOutLimiter limiter = new ChildrenFanOutLimiter(5, 1);
+
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            events.add(spotEvent(TaskStatus.SUCCESS));
+        }
+        List<Event> foldedEvents = new ArrayList<>();
+        assertTrue(limiter.fold(events, ENV, cacheHandler, foldedEvents).isEmpty());
+        assertEquals(5, events.size());
+        assertTrue(foldedEvents.isEmpty());
+    }
+
+    private static Event spotEvent(TaskStatus status) {
+        SpotEvent event = new SpotEvent(Event.generateTaskId(CHILD), CHILD, PARENT_ID, status, LogParams.create());
+        event.setTime(ZonedDateTime.now());
+        return event;
+    }
+}
@@ -0,0 +1,39 @@
+package com.datorama.oss.timbermill;
+
+import com.datorama.oss.timbermill.common.cache.MissingParentsCache;
+import com.datorama.oss.timbermill.unit.Task;
+import com.google.common.collect.Sets;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.when;
+
+public class DeferredParentsResolverTest {
+
+    private static final String ENV = "env";
+
+    @Test
+    public void foundParentsAreHandedBackAndMissesAreRememberedTest() {
+        ElasticsearchClient es = Mockito.mock(ElasticsearchClient.class);
+        Task parent = new Task();
+        when(es.getMissingParents(anySetOf(String.class), eq(ENV))).thenReturn(Collections.singletonMap("found", parent));
+        MissingParentsCache missingParentsCache = new MissingParentsCache(60);
+        DeferredParentsResolver resolver = new DeferredParentsResolver(es, missingParentsCache);
+
+        resolver.defer(ENV, Sets.newHashSet("found", "missing"));
+        resolver.resolve();
+
+        Map<String, Task> foundParents = resolver.drainFoundParents();
+        assertEquals(1, foundParents.size());
+        assertSame(parent, foundParents.get("found"));
+        assertTrue(resolver.drainFoundParents().isEmpty());
+        assertEquals(Collections.singleton("missing"), missingParentsCache.getMissing(Sets.newHashSet("found", "missing")));
+        resolver.close();
+    }
+}
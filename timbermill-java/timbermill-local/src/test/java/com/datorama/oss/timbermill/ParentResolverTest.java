@@ -0,0 +1,125 @@
+package com.datorama.oss.timbermill;
+
+import com.datorama.oss.timbermill.common.cache.AbstractCacheHandler;
+import com.datorama.oss.timbermill.common.cache.CacheConfig;
+import com.datorama.oss.timbermill.common.cache.CacheHandlerUtil;
+import com.datorama.oss.timbermill.unit.Event;
+import com.datorama.oss.timbermill.unit.LocalTask;
+import com.datorama.oss.timbermill.unit.LogParams;
+import com.datorama.oss.timbermill.unit.StartEvent;
+import com.datorama.oss.timbermill.unit.Task;
+import com.datorama.oss.timbermill.unit.TaskStatus;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ParentResolverTest {
+
+    @Test
+    public void resolveOrphansChainTest() {
+        AbstractCacheHandler cacheHandler = CacheHandlerUtil.getCacheHandler("local", new CacheConfig(null, 0, 10000000, 10000000));
+
+        // orphan1 and orphan2 are cached orphans, orphan3 is a received orphan whose parent is only adopted in this batch
+        Map<String, LocalTask> cachedTasks = Maps.newHashMap();
+        cachedTasks.put("orphan1", new LocalTask(createTask("orphan1", "parent", true)));
+        cachedTasks.put("orphan2", new LocalTask(createTask("orphan2", "orphan1", true)));
+        cacheHandler.logPushToTasksCache(cachedTasks, "test");
+        Map<String, List<String>> cachedOrphans = Maps.newHashMap();
+        cachedOrphans.put("parent", Lists.newArrayList("orphan1"));
+        cachedOrphans.put("orphan1", Lists.newArrayList("orphan2"));
+        cacheHandler.logPushToOrphanCache(cachedOrphans, "test");
+
+        Map<String, Task> receivedTasks = Maps.newHashMap();
+        Task parent = createTask("parent", null, false);
+        parent.setPrimaryId("parent");
+        parent.setCtx(Collections.singletonMap("ctx", "value"));
+        receivedTasks.put("parent", parent);
+        receivedTasks.put("orphan3", createTask("orphan3", "orphan2", true));
+
+        Map<String, Task> adopted = new ParentResolver(receivedTasks, cacheHandler).resolveOrphansReceived();
+
+        assertEquals(3, adopted.size());
+        for (Task task : adopted.values()) {
+            assertFalse(task.isOrphan());
+            assertEquals("parent", task.getPrimaryId());
+            assertEquals("value", task.getCtx().get("ctx"));
+        }
+        assertEquals(Lists.newArrayList("parent_name", "orphan1_name", "orphan2_name"), adopted.get("orphan3").getParentsPath());
+    }
+
+    @Test
+    public void siblingsShareReadOnlyParentPropertiesTest() {
+        Task parent = createTask("parent", "root", false);
+        parent.setPrimaryId("root");
+        parent.setParentsPath(Lists.newArrayList("root_name"));
+        parent.setCtx(Collections.singletonMap("ctx", "value"));
+        Map<String, Task> previouslyIndexedTasks = Collections.singletonMap("parent", parent);
+
+        Map<String, Event> startEvents = new LinkedHashMap<>();
+        Map<String, List<Event>> eventsMap = Maps.newHashMap();
+        for (Event event : Lists.newArrayList(startEvent("grandchild", "child1"), startEvent("child1", "parent"), startEvent("child2", "parent"))) {
+            startEvents.put(event.getTaskId(), event);
+            eventsMap.put(event.getTaskId(), Lists.newArrayList(event));
+        }
+
+        TaskIndexer.enrichStartEventsByOrder(new StartEventsForest(startEvents), eventsMap, previouslyIndexedTasks);
+
+        Event child1 = startEvents.get("child1");
+        Event child2 = startEvents.get("child2");
+        for (Event child : Lists.newArrayList(child1, child2)) {
+            assertEquals(Lists.newArrayList("root_name", "parent_name"), child.getParentsPath());
+            assertEquals("root", child.getPrimaryId());
+            assertEquals("value", child.getContext().get("ctx"));
+        }
+        assertSame(child1.getParentsPath(), child2.getParentsPath());
+        assertEquals(Lists.newArrayList("root_name", "parent_name", "child1_name"), startEvents.get("grandchild").getParentsPath());
+        assertEquals(Lists.newArrayList("root_name"), parent.getParentsPath());
+        try {
+            child1.getParentsPath().add("other");
+            fail("Shared parents path should be read-only");
+        } catch (UnsupportedOperationException ignored) {
+        }
+    }
+
+    @Test
+    public void adoptedSiblingsShareReadOnlyParentPropertiesTest() {
+        AbstractCacheHandler cacheHandler = CacheHandlerUtil.getCacheHandler("local", new CacheConfig(null, 0, 10000000, 10000000));
+        Map<String, LocalTask> cachedTasks = Maps.newHashMap();
+        cachedTasks.put("orphan1", new LocalTask(createTask("orphan1", "parent", true)));
+        cachedTasks.put("orphan2", new LocalTask(createTask("orphan2", "parent", true)));
+        cacheHandler.logPushToTasksCache(cachedTasks, "test");
+        cacheHandler.logPushToOrphanCache(Collections.singletonMap("parent", Lists.newArrayList("orphan1", "orphan2")), "test");
+
+        Task parent = createTask("parent", null, false);
+        parent.setPrimaryId("parent");
+        parent.setCtx(Collections.singletonMap("ctx", "value"));
+        Map<String, Task> adopted = new ParentResolver(Collections.singletonMap("parent", parent), cacheHandler).resolveOrphansReceived();
+
+        Task orphan1 = adopted.get("orphan1");
+        Task orphan2 = adopted.get("orphan2");
+        assertEquals(Lists.newArrayList("parent_name"), orphan1.getParentsPath());
+        assertSame(orphan1.getParentsPath(), orphan2.getParentsPath());
+        assertEquals("value", orphan2.getCtx().get("ctx"));
+        assertNull(parent.getParentsPath());
+    }
+
+    private static Event startEvent(String id, String parentId) {
+        return new StartEvent(id, id + "_name", LogParams.create(), parentId);
+    }
+
+    private static Task createTask(String id, String parentId, boolean orphan) {
+        Task task = new Task();
+        task.setName(id + "_name");
+        task.setParentId(parentId);
+        task.setStatus(TaskStatus.UNTERMINATED);
+        task.setOrphan(orphan);
+        return task;
+    }
+}
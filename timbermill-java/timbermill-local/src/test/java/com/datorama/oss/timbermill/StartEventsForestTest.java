@@ -0,0 +1,54 @@
+package com.datorama.oss.timbermill;
+
+import com.datorama.oss.timbermill.unit.Event;
+import com.datorama.oss.timbermill.unit.LogParams;
+import com.datorama.oss.timbermill.unit.StartEvent;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class StartEventsForestTest {
+
+    @Test
+    public void parentsBeforeChildrenTest() {
+        Map<String, Event> startEvents = new LinkedHashMap<>();
+        addStartEvent(startEvents, "grandchild", "child");
+        addStartEvent(startEvents, "child", "root");
+        addStartEvent(startEvents, "root", null);
+        addStartEvent(startEvents, "orphan", "missing_parent");
+
+        StartEventsForest forest = new StartEventsForest(startEvents);
+        List<Event> ordered = forest.getEventsInTopologicalOrder();
+
+        assertEquals(4, ordered.size());
+        assertEquals(0, forest.getUnreachableAmount());
+        for (int i = 0; i < ordered.size(); i++) {
+            String parentId = ordered.get(i).getParentId();
+            for (int j = i + 1; j < ordered.size(); j++) {
+                assertNotEquals(ordered.get(j).getTaskId(), parentId);
+            }
+        }
+    }
+
+    @Test
+    public void parentCycleIsUnreachableTest() {
+        Map<String, Event> startEvents = new LinkedHashMap<>();
+        addStartEvent(startEvents, "cycle1", "cycle2");
+        addStartEvent(startEvents, "cycle2", "cycle1");
+        addStartEvent(startEvents, "self", "self");
+        addStartEvent(startEvents, "root", null);
+
+        StartEventsForest forest = new StartEventsForest(startEvents);
+
+        assertEquals(1, forest.getEventsInTopologicalOrder().size());
+        assertEquals(3, forest.getUnreachableAmount());
+    }
+
+    private static void addStartEvent(Map<String, Event> startEvents, String taskId, String parentId) {
+        startEvents.put(taskId, new StartEvent(taskId, "forest_test", LogParams.create(), parentId));
+    }
+}
@@ -0,0 +1,140 @@
+package com.datorama.oss.timbermill;
+
+import com.datorama.oss.timbermill.unit.*;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.junit.Test;
+
+import java.time.ZonedDateTime;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TaskRollupsTest {
+
+    private static final String ENV = "env";
+    private static final String ROLLED_UP = "rolled_up";
+
+    @Test
+    public void completedTasksAreRolledUpTest() {
+        TaskRollups taskRollups = new TaskRollups(Collections.singletonList(ROLLED_UP), 60, 0, 1);
+        ZonedDateTime time = ZonedDateTime.now();
+
+        List<Event> events = new ArrayList<>();
+        events.add(spotEvent(ROLLED_UP, TaskStatus.SUCCESS, time, "a"));
+        events.add(spotEvent(ROLLED_UP, TaskStatus.ERROR, time, "b"));
+        events.add(spotEvent(ROLLED_UP, TaskStatus.SUCCESS, time, "a"));
+        String startedId = Event.generateTaskId(ROLLED_UP);
+        StartEvent start = new StartEvent(startedId, ROLLED_UP, LogParams.create(), null);
+        start.setTime(time);
+        SuccessEvent success = new SuccessEvent(startedId, LogParams.create());
+        success.setTime(time.plusNanos(100 * 1000000L));
+        events.add(start);
+        events.add(success);
+        Event otherEvent = spotEvent("other", TaskStatus.SUCCESS, time, "a");
+        events.add(otherEvent);
+        String openId = Event.generateTaskId(ROLLED_UP);
+        Event openStart = new StartEvent(openId, ROLLED_UP, LogParams.create(), null);
+        events.add(openStart);
+
+        List<Event> rolledUpEvents = new ArrayList<>();
+        assertEquals(4, taskRollups.rollUp(events, ENV, rolledUpEvents));
+        assertEquals(Arrays.asList(otherEvent, openStart), events);
+        // Handed back to be cached, so children in later batches are enriched
+        assertEquals(5, rolledUpEvents.size());
+        assertTrue(rolledUpEvents.contains(start));
+        assertTrue(rolledUpEvents.contains(success));
+
+        assertTrue(taskRollups.flushEndedWindows(time.toInstant().toEpochMilli()).isEmpty());
+        Map<String, List<RollupTask>> rollups = taskRollups.flushAll();
+        RollupTask rollup = rollups.get(ENV).get(0);
+        assertEquals(1, rollups.get(ENV).size());
+        assertEquals(ROLLED_UP, rollup.getString().get("taskName"));
+        assertEquals(4L, rollup.getMetric().get("count"));
+        assertEquals(1L, rollup.getMetric().get("errorCount"));
+        assertEquals(0L, rollup.getMetric().get("durationMin"));
+        assertEquals(100L, rollup.getMetric().get("durationMax"));
+        assertEquals("a (2), b (1)", rollup.getText().get("top_type"));
+        assertTrue(taskRollups.flushAll().isEmpty());
+    }
+
+    @Test
+    public void parentsAreNotRolledUpTest() {
+        TaskRollups taskRollups = new TaskRollups(Collections.singletonList(ROLLED_UP), 60, 0, 1);
+        Event parent = spotEvent(ROLLED_UP, TaskStatus.SUCCESS, ZonedDateTime.now(), "a");
+        Event child = new SpotEvent(Event.generateTaskId("child"), "child", parent.getTaskId(), TaskStatus.SUCCESS, LogParams.create());
+        List<Event> events = new ArrayList<>(Arrays.asList(parent, child));
+
+        List<Event> rolledUpEvents = new ArrayList<>();
+        assertEquals(0, taskRollups.rollUp(events, ENV, rolledUpEvents));
+        assertEquals(2, events.size());
+        assertTrue(rolledUpEvents.isEmpty());
+    }
+
+    @Test
+    public void sampledTasksStayInBatchTest() {
+        TaskRollups taskRollups = new TaskRollups(Collections.singletonList(ROLLED_UP), 60, 2, 1);
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            events.add(spotEvent(ROLLED_UP, TaskStatus.SUCCESS, ZonedDateTime.now(), "a"));
+        }
+
+        List<Event> rolledUpEvents = new ArrayList<>();
+        assertEquals(5, taskRollups.rollUp(events, ENV, rolledUpEvents));
+        assertEquals(5, events.size());
+        assertEquals(5, rolledUpEvents.size());
+        assertEquals(10L, taskRollups.flushAll().get(ENV).get(0).getMetric().get("count"));
+    }
+
+    @Test
+    public void windowsAreFlushedByEventTimeTest() {
+        TaskRollups taskRollups = new TaskRollups(Collections.singletonList(ROLLED_UP), 60, 0, 1);
+        ZonedDateTime windowStart = ZonedDateTime.parse("2020-01-01T00:00:00Z");
+        long nowMillis = windowStart.toInstant().toEpochMilli();
+
+        taskRollups.rollUp(new ArrayList<>(Collections.singletonList(spotEvent(ROLLED_UP, TaskStatus.SUCCESS, windowStart, "a"))), ENV, new ArrayList<>());
+        taskRollups.rollUp(new ArrayList<>(Collections.singletonList(spotEvent(ROLLED_UP, TaskStatus.SUCCESS, windowStart.plusSeconds(90), "a"))), ENV, new ArrayList<>());
+        // The next window started, but late tasks of the first one are still waited for
+        assertTrue(taskRollups.flushEndedWindows(nowMillis).isEmpty());
+
+        taskRollups.rollUp(new ArrayList<>(Collections.singletonList(spotEvent(ROLLED_UP, TaskStatus.SUCCESS, windowStart.plusSeconds(120), "a"))), ENV, new ArrayList<>());
+        List<RollupTask> flushed = taskRollups.flushEndedWindows(nowMillis).get(ENV);
+        assertEquals(1, flushed.size());
+        assertEquals(windowStart.toInstant(), flushed.get(0).getStartTime().toInstant());
+
+        // Without more events the server clock flushes the rest
+        assertEquals(2, taskRollups.flushEndedWindows(nowMillis + 10 * 60 * 1000).get(ENV).size());
+    }
+
+    @Test
+    public void partialSummariesOfWindowAreMergedTest() {
+        TaskRollups taskRollups = new TaskRollups(Collections.singletonList(ROLLED_UP), 60, 0, 1);
+        ZonedDateTime time = ZonedDateTime.parse("2020-01-01T00:00:10Z");
+        taskRollups.rollUp(new ArrayList<>(Collections.singletonList(spotEvent(ROLLED_UP, TaskStatus.SUCCESS, time, "a"))), ENV, new ArrayList<>());
+        RollupTask first = taskRollups.flushAll().get(ENV).get(0);
+        taskRollups.rollUp(new ArrayList<>(Collections.singletonList(spotEvent(ROLLED_UP, TaskStatus.SUCCESS, time.plusSeconds(5), "a"))), ENV, new ArrayList<>());
+        RollupTask late = taskRollups.flushAll().get(ENV).get(0);
+
+        assertEquals(first.getRollupId(), late.getRollupId());
+        UpdateRequest updateRequest = (UpdateRequest) late.getWriteRequest("index", late.getRollupId());
+        assertNotNull(updateRequest.upsertRequest());
+        Map<String, Object> params = updateRequest.script().getParams();
+        assertEquals(1L, ((Map<?, ?>) params.get("sum")).get("count"));
+        assertTrue(((Map<?, ?>) params.get("min")).containsKey("durationMin"));
+    }
+
+    @Test
+    public void durationSketchPercentilesTest() {
+        TaskRollups.DurationSketch sketch = new TaskRollups.DurationSketch();
+        for (long duration = 1; duration <= 1000; duration++) {
+            sketch.add(duration);
+        }
+        assertEquals(500, sketch.percentile(0.5), 25);
+        assertEquals(990, sketch.percentile(0.99), 50);
+    }
+
+    private static Event spotEvent(String name, TaskStatus status, ZonedDateTime time, String type) {
+        SpotEvent event = new SpotEvent(Event.generateTaskId(name), name, null, status, LogParams.create().string("type", type));
+        event.setTime(time);
+        return event;
+    }
+}
@@ -0,0 +1,40 @@
+package com.datorama.oss.timbermill.common.cache;
+
+import com.datorama.oss.timbermill.unit.LocalTask;
+import com.datorama.oss.timbermill.unit.Task;
+import com.datorama.oss.timbermill.unit.TaskStatus;
+import com.google.common.collect.Maps;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertNotNull;
+
+public class LocalCacheHandlerTest {
+
+    @Test
+    public void completedTasksAreEvictedBeforeParentsTest() {
+        LocalCacheHandler cacheHandler = new LocalCacheHandler(100000, 100000);
+        Map<String, LocalTask> tasks = Maps.newHashMap();
+        tasks.put("unterminated", createTask(TaskStatus.UNTERMINATED));
+        tasks.put("parent", createTask(TaskStatus.SUCCESS));
+        cacheHandler.pushToTasksCache(tasks);
+        cacheHandler.markAsParents(Collections.singleton("parent"));
+
+        for (int i = 0; i < 10000; i++) {
+            cacheHandler.pushToTasksCache(Collections.singletonMap("completed" + i, createTask(TaskStatus.SUCCESS)));
+        }
+
+        Map<String, LocalTask> cachedTasks = cacheHandler.getFromTasksCache(tasks.keySet());
+        assertNotNull(cachedTasks.get("unterminated"));
+        assertNotNull(cachedTasks.get("parent"));
+    }
+
+    private static LocalTask createTask(TaskStatus status) {
+        Task task = new Task();
+        task.setName("name");
+        task.setStatus(status);
+        return new LocalTask(task);
+    }
+}
@@ -0,0 +1,21 @@
+package com.datorama.oss.timbermill.common.cache;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class MissingParentsCacheTest {
+
+    @Test
+    public void receivedParentIsNoLongerMissingTest() {
+        MissingParentsCache missingParentsCache = new MissingParentsCache(60);
+        missingParentsCache.putMissing(Arrays.asList("parent1", "parent2"));
+        assertEquals(Collections.singleton("parent1"), missingParentsCache.getMissing(Arrays.asList("parent1", "parent3")));
+
+        missingParentsCache.invalidate(Collections.singleton("parent1"));
+        assertEquals(Collections.singleton("parent2"), missingParentsCache.getMissing(Arrays.asList("parent1", "parent2")));
+    }
+}
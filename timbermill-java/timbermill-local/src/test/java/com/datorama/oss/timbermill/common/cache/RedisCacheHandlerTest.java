@@ -0,0 +1,94 @@
+package com.datorama.oss.timbermill.common.cache;
+
+import com.datorama.oss.timbermill.common.redis.RedisService;
+import com.datorama.oss.timbermill.unit.LocalTask;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+public class RedisCacheHandlerTest {
+
+    private static final int LOCK_STRIPES = 1000;
+
+    private final Map<String, Object> redis = Maps.newHashMap();
+    private RedisService redisService;
+    private RedisCacheHandler cacheHandler;
+
+    @Before
+    public void setUp() {
+        redisService = Mockito.mock(RedisService.class);
+        when(redisService.getFromRedis(anyCollection())).thenAnswer(invocation -> {
+            Map<String, Object> found = Maps.newHashMap();
+            for (Object key : (Collection<?>) invocation.getArguments()[0]) {
+                if (redis.containsKey(key)) {
+                    found.put((String) key, redis.get(key));
+                }
+            }
+            return found;
+        });
+        when(redisService.getLockTimeoutMillis()).thenReturn(20000L);
+        cacheHandler = new RedisCacheHandler(redisService, 60, LOCK_STRIPES);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void treeAndCachedOrphansAreLockedTest() {
+        redis.put("child", cachedTask("root"));
+        redis.put("orphan###child", Lists.newArrayList("orphan"));
+        when(redisService.lockAll(anyList(), anyString(), anyLong())).thenReturn(true);
+
+        cacheHandler.lock(Collections.singleton("child"));
+
+        ArgumentCaptor<List> stripes = ArgumentCaptor.forClass(List.class);
+        verify(redisService).lockAll(stripes.capture(), anyString(), anyLong());
+        assertEquals(Sets.newHashSet(stripe("root"), stripe("orphan")), Sets.newHashSet(stripes.getValue()));
+    }
+
+    @Test
+    public void adoptedTasksThatCantBeLockedAreReturnedTest() {
+        when(redisService.lockAll(anyList(), anyString(), anyLong())).thenReturn(true, false);
+        CacheLock cacheLock = cacheHandler.lock(Collections.singleton("parent"));
+
+        assertTrue(cacheHandler.extend(cacheLock, Collections.singleton("parent")).isEmpty());
+        assertEquals(Collections.singleton("adopted"), cacheHandler.extend(cacheLock, Collections.singleton("adopted")));
+    }
+
+    @Test
+    public void failingRedisIsRetriedUntilLockTimeoutTest() {
+        when(redisService.getLockTimeoutMillis()).thenReturn(300L);
+        when(redisService.lockAll(anyList(), anyString(), anyLong())).thenReturn(false);
+
+        long start = System.currentTimeMillis();
+        CacheLock cacheLock = cacheHandler.lock(Collections.singleton("parent"));
+        long waited = System.currentTimeMillis() - start;
+
+        // Goes on unlocked once the lock timeout passed, backing off between the attempts
+        assertNull(cacheLock.getToken());
+        assertTrue(waited >= 300 && waited < 5000);
+        verify(redisService, atLeast(2)).lockAll(anyList(), anyString(), anyLong());
+        verify(redisService, atMost(4)).lockAll(anyList(), anyString(), anyLong());
+        assertTrue(cacheHandler.extend(cacheLock, Collections.singleton("adopted")).isEmpty());
+    }
+
+    private static LocalTask cachedTask(String primaryId) {
+        LocalTask task = new LocalTask();
+        task.setPrimaryId(primaryId);
+        return task;
+    }
+
+    private static String stripe(String treeId) {
+        return "cache_lock_" + Math.floorMod(treeId.hashCode(), LOCK_STRIPES);
+    }
+}
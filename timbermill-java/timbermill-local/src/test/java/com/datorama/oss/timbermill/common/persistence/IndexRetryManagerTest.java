@@ -0,0 +1,57 @@
+package com.datorama.oss.timbermill.common.persistence;
+
+import com.datorama.oss.timbermill.unit.Task;
+import com.datorama.oss.timbermill.unit.TaskStatus;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.Test;
+
+import java.time.ZonedDateTime;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class IndexRetryManagerTest {
+
+    private static final String INDEX = "timbermill2-test-000001";
+
+    @Test
+    public void conflictingCreateIsRetriedAsScriptedUpsertTest() {
+        Task task = new Task();
+        task.setName("name");
+        task.setStatus(TaskStatus.SUCCESS);
+        task.setStartTime(ZonedDateTime.now());
+        task.setFirstWrite(true);
+        DocWriteRequest<?> createRequest = task.getWriteRequest(INDEX, "id");
+        assertEquals(DocWriteRequest.OpType.CREATE, createRequest.opType());
+
+        BulkRequest bulkRequest = new BulkRequest().add(createRequest);
+        BulkItemResponse.Failure failure = new BulkItemResponse.Failure(INDEX, "_doc", "id",
+                new VersionConflictEngineException(new ShardId(INDEX, "uuid", 0), "id", "document already exists"));
+        BulkResponse bulkResponse = new BulkResponse(new BulkItemResponse[]{ new BulkItemResponse(0, DocWriteRequest.OpType.CREATE, failure) }, 1);
+
+        IndexRetryManager retryManager = new IndexRetryManager(1, 1, null, null);
+        DbBulkRequest failedRequests = retryManager.extractFailedRequestsFromBulk(new DbBulkRequest(bulkRequest), bulkResponse);
+        assertEquals(1, failedRequests.numOfActions());
+        UpdateRequest updateRequest = (UpdateRequest) failedRequests.getRequest().requests().get(0);
+        assertEquals("id", updateRequest.id());
+        assertEquals(INDEX, updateRequest.index());
+        assertNotNull(updateRequest.script());
+    }
+
+    @Test
+    public void asyncFirstTryIsCompletedByRetryManagerTest() {
+        IndexRetryManager retryManager = new IndexRetryManager(1, 1, null, null);
+        DbBulkRequest dbBulkRequest = new DbBulkRequest(new BulkRequest());
+        BulkResponse bulkResponse = new BulkResponse(new BulkItemResponse[0], 1);
+        assertEquals(Collections.singletonList(bulkResponse), retryManager.indexBulkRequestAfterFirstTry(dbBulkRequest, 1, bulkResponse, null));
+
+        // The first try was the only one, and there is no persistence to hand the bulk to
+        assertTrue(retryManager.indexBulkRequestAfterFirstTry(dbBulkRequest, 1, null, new RuntimeException()).isEmpty());
+    }
+}
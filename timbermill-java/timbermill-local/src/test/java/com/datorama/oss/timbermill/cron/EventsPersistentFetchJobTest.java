@@ -0,0 +1,65 @@
+package com.datorama.oss.timbermill.cron;
+
+import com.datorama.oss.timbermill.common.persistence.PersistenceHandler;
+import com.datorama.oss.timbermill.pipe.EnvFairEventsQueue;
+import com.datorama.oss.timbermill.unit.*;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static com.datorama.oss.timbermill.common.ElasticsearchUtil.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class EventsPersistentFetchJobTest {
+
+    @Test
+    public void overQuotaEnvsAreSetAsideTest() {
+        EnvFairEventsQueue eventsQueue = new EnvFairEventsQueue(100, 2, 0, Collections.emptyMap(), LinkedBlockingQueue::new);
+        BlockingQueue<Event> overflowedQueue = new LinkedBlockingQueue<>();
+        List<Event> fetched = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            fetched.add(event("noisy"));
+        }
+        fetched.add(event("quiet"));
+        List<Event> refetched = Arrays.asList(event("noisy"), event("noisy"), event("noisy"));
+        PersistenceHandler persistenceHandler = Mockito.mock(PersistenceHandler.class);
+        when(persistenceHandler.fetchAndDeleteOverflowedEvents()).thenReturn(fetched, refetched, Collections.emptyList());
+
+        new EventsPersistentFetchJob().execute(context(persistenceHandler, eventsQueue, overflowedQueue));
+
+        assertEquals(3, eventsQueue.size());
+        assertTrue(overflowedQueue.isEmpty());
+        // Stops once a whole fetch was over quota, instead of fetching the same events over and over
+        verify(persistenceHandler, times(2)).fetchAndDeleteOverflowedEvents();
+        ArgumentCaptor<ArrayList> persisted = ArgumentCaptor.forClass(ArrayList.class);
+        verify(persistenceHandler, times(2)).persistEvents(persisted.capture());
+        assertEquals(3, persisted.getAllValues().get(0).size());
+        assertEquals(3, persisted.getAllValues().get(1).size());
+    }
+
+    private static JobExecutionContext context(PersistenceHandler persistenceHandler, BlockingQueue<Event> eventsQueue, BlockingQueue<Event> overflowedQueue) {
+        JobDataMap jobDataMap = new JobDataMap();
+        jobDataMap.put(PERSISTENCE_HANDLER, persistenceHandler);
+        jobDataMap.put(EVENTS_QUEUE, eventsQueue);
+        jobDataMap.put(OVERFLOWED_EVENTS_QUEUE, overflowedQueue);
+        JobDetail jobDetail = Mockito.mock(JobDetail.class);
+        when(jobDetail.getJobDataMap()).thenReturn(jobDataMap);
+        JobExecutionContext context = Mockito.mock(JobExecutionContext.class);
+        when(context.getJobDetail()).thenReturn(jobDetail);
+        return context;
+    }
+
+    private static Event event(String env) {
+        Event event = new SpotEvent(Event.generateTaskId("name"), "name", null, TaskStatus.SUCCESS, LogParams.create());
+        event.setEnv(env);
+        return event;
+    }
+}
@@ -0,0 +1,57 @@
+package com.datorama.oss.timbermill.pipe;
+
+import com.datorama.oss.timbermill.unit.*;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.Assert.*;
+
+public class EnvFairEventsQueueTest {
+
+    @Test
+    public void envsAreDrainedByWeightTest() {
+        EnvFairEventsQueue queue = new EnvFairEventsQueue(1000, 0, 0, ImmutableMap.of("heavy", 3), LinkedBlockingQueue::new);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(queue.offer(event("noisy")));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertTrue(queue.offer(event("heavy")));
+        }
+        for (int i = 0; i < 5; i++) {
+            assertTrue(queue.offer(event("quiet")));
+        }
+
+        List<Event> events = new ArrayList<>();
+        assertEquals(50, queue.drainTo(events, 50));
+        assertEquals(5, events.stream().filter(event -> event.getEnv().equals("quiet")).count());
+        long heavy = events.stream().filter(event -> event.getEnv().equals("heavy")).count();
+        long noisy = events.stream().filter(event -> event.getEnv().equals("noisy")).count();
+        assertEquals(45, heavy + noisy);
+        assertTrue(heavy > 2 * noisy);
+        assertEquals(155, queue.size());
+    }
+
+    @Test
+    public void envOverQuotaIsRefusedTest() {
+        EnvFairEventsQueue queue = new EnvFairEventsQueue(1000, 2, 0, Collections.emptyMap(), LinkedBlockingQueue::new);
+        assertTrue(queue.offer(event("noisy")));
+        assertTrue(queue.offer(event("noisy")));
+        assertTrue(queue.isOverQuota(event("noisy")));
+        assertFalse(queue.offer(event("noisy")));
+        assertTrue(queue.offer(event("quiet")));
+
+        assertEquals(3, queue.drainTo(new ArrayList<>()));
+        assertTrue(queue.offer(event("noisy")));
+    }
+
+    private static Event event(String env) {
+        Event event = new SpotEvent(Event.generateTaskId("name"), "name", null, TaskStatus.SUCCESS, LogParams.create());
+        event.setEnv(env);
+        return event;
+    }
+}
@@ -0,0 +1,54 @@
+package com.datorama.oss.timbermill.pipe;
+
+import com.datorama.oss.timbermill.unit.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PrioritizedEventsQueueTest {
+
+    @Test
+    public void highPriorityEventsAreDrainedFirstTest() {
+        PrioritizedEventsQueue queue = new PrioritizedEventsQueue(1000, Collections.singleton("important"), Collections.singleton("noisy"));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(queue.offer(spotEvent("info", TaskStatus.SUCCESS)));
+            assertTrue(queue.offer(spotEvent("noisy", TaskStatus.SUCCESS)));
+        }
+        Event error = spotEvent("info", TaskStatus.ERROR);
+        Event important = spotEvent("important", TaskStatus.SUCCESS);
+        Event root = new StartEvent(Event.generateTaskId("root"), "root", LogParams.create(), null);
+        queue.offer(error);
+        queue.offer(important);
+        queue.offer(root);
+
+        List<Event> events = new ArrayList<>();
+        assertEquals(50, queue.drainTo(events, 50));
+        assertEquals(error, events.get(0));
+        assertEquals(important, events.get(1));
+        assertEquals(root, events.get(2));
+        assertEquals(50 - 5 - 2, events.stream().filter(event -> event.getName().equals("info")).count());
+        // The low lane still gets its minimal share of the drain
+        assertEquals(5, events.stream().filter(event -> event.getName().equals("noisy")).count());
+        assertEquals(153, queue.size());
+        assertEquals(1000 - 153, queue.remainingCapacity());
+    }
+
+    @Test
+    public void capacityIsSharedByLanesTest() {
+        PrioritizedEventsQueue queue = new PrioritizedEventsQueue(2, Collections.emptySet(), Collections.emptySet());
+        assertTrue(queue.offer(spotEvent("info", TaskStatus.ERROR)));
+        assertTrue(queue.offer(spotEvent("info", TaskStatus.SUCCESS)));
+        assertFalse(queue.offer(spotEvent("info", TaskStatus.ERROR)));
+        assertEquals(TaskStatus.ERROR, ((SpotEvent) queue.poll()).getStatus());
+        assertEquals(TaskStatus.SUCCESS, ((SpotEvent) queue.poll()).getStatus());
+        assertNull(queue.poll());
+    }
+
+    private static Event spotEvent(String name, TaskStatus status) {
+        return new SpotEvent(Event.generateTaskId(name), name, "parent", status, LogParams.create());
+    }
+}
@@ -0,0 +1,53 @@
+package com.datorama.oss.timbermill.plugins;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.datorama.oss.timbermill.plugins.SwitchCasePlugin.CaseRule;
+
+import static org.junit.Assert.assertEquals;
+
+public class CaseRulesMatcherTest {
+
+	@Test
+	public void firstRuleByOrderWinsTest() {
+		List<CaseRule> rules = Arrays.asList(
+				new CaseRule(Arrays.asList("timeout", "timed out"), "timeout"),
+				new CaseRule(Collections.singletonList("out"), "out"),
+				new CaseRule(Arrays.asList("he", "she", "hers"), "pronoun"));
+		CaseRulesMatcher matcher = new CaseRulesMatcher(rules);
+
+		assertEquals(0, matcher.firstMatchingRule("connection timed out"));
+		assertEquals(1, matcher.firstMatchingRule("out of memory"));
+		assertEquals(2, matcher.firstMatchingRule("ushers"));
+		assertEquals(CaseRulesMatcher.NO_MATCH, matcher.firstMatchingRule("all good"));
+		assertEquals(CaseRulesMatcher.NO_MATCH, matcher.firstMatchingRule(""));
+	}
+
+	@Test
+	public void patternsFoundThroughFailureLinksTest() {
+		List<CaseRule> rules = Arrays.asList(
+				new CaseRule(Collections.singletonList("abcd"), "abcd"),
+				new CaseRule(Collections.singletonList("bc"), "bc"));
+		CaseRulesMatcher matcher = new CaseRulesMatcher(rules);
+
+		assertEquals(1, matcher.firstMatchingRule("abce"));
+		assertEquals(0, matcher.firstMatchingRule("xabcabcd"));
+	}
+
+	@Test
+	public void ruleWithoutPatternsMatchesAnyTextTest() {
+		List<CaseRule> rules = Arrays.asList(
+				new CaseRule(Collections.singletonList("error"), "error"),
+				new CaseRule(null, "default"),
+				new CaseRule(Collections.singletonList("never"), "never"));
+		CaseRulesMatcher matcher = new CaseRulesMatcher(rules);
+
+		assertEquals(0, matcher.firstMatchingRule("an error"));
+		assertEquals(1, matcher.firstMatchingRule("never"));
+		assertEquals(1, matcher.firstMatchingRule(""));
+	}
+}
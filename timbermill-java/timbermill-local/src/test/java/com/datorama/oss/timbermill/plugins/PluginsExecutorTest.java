@@ -0,0 +1,65 @@
+package com.datorama.oss.timbermill.plugins;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.datorama.oss.timbermill.plugins.SwitchCasePlugin.CaseRule;
+import com.datorama.oss.timbermill.unit.Event;
+import com.datorama.oss.timbermill.unit.LogParams;
+import com.datorama.oss.timbermill.unit.StartEvent;
+
+import static org.junit.Assert.assertEquals;
+
+public class PluginsExecutorTest {
+
+	private static final String PLUGIN_TASK = "plugin_task";
+
+	@Test
+	public void pluginAppliedOnAllChunksTest() {
+		SwitchCasePlugin plugin = new SwitchCasePlugin("switch", new TaskMatcher(PLUGIN_TASK), "error", "type",
+				Collections.singletonList(new CaseRule(Collections.singletonList("timeout"), "timeout")));
+		PluginsExecutor executor = new PluginsExecutor(new CompiledPlugins(Collections.singletonList(plugin)), 4, 10000);
+
+		List<Event> events = new ArrayList<>();
+		for (int i = 0; i < 3000; i++) {
+			events.add(createEvent(PLUGIN_TASK, "request timeout " + i));
+		}
+		Event otherTaskEvent = createEvent("other_task", "request timeout");
+		events.add(otherTaskEvent);
+
+		executor.apply(events);
+		executor.close();
+
+		for (Event event : events.subList(0, 3000)) {
+			assertEquals("timeout", event.getStrings().get("type"));
+		}
+		assertEquals(null, otherTaskEvent.getStrings().get("type"));
+	}
+
+	@Test
+	public void failingPluginIsSkippedTest() {
+		AtomicInteger runs = new AtomicInteger();
+		TaskLogPlugin failingPlugin = new TaskLogPlugin("failing") {
+			@Override public void apply(Collection<Event> events) {
+				runs.incrementAndGet();
+				throw new RuntimeException("Failing plugin");
+			}
+		};
+		PluginsExecutor executor = new PluginsExecutor(new CompiledPlugins(Collections.singletonList(failingPlugin)), 2, 10000);
+
+		List<Event> events = Collections.singletonList(createEvent(PLUGIN_TASK, "text"));
+		for (int i = 0; i < 5; i++) {
+			executor.apply(events);
+		}
+		executor.close();
+
+		assertEquals(3, runs.get());
+	}
+
+	private static Event createEvent(String name, String error) {
+		LogParams logParams = LogParams.create().text("error", error);
+		return new StartEvent(Event.generateTaskId(name), name, logParams, null);
+	}
+}
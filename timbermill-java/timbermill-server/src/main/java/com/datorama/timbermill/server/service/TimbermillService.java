@@ -3,6 +3,7 @@ package com.datorama.timbermill.server.service;
 import com.datorama.oss.timbermill.ElasticsearchClient;
 import com.datorama.oss.timbermill.TaskIndexer;
 import com.datorama.oss.timbermill.common.ElasticsearchUtil;
+import com.datorama.oss.timbermill.common.KamonConstants;
 import com.datorama.oss.timbermill.common.cache.AbstractCacheHandler;
 import com.datorama.oss.timbermill.common.cache.CacheConfig;
 import com.datorama.oss.timbermill.common.cache.CacheHandlerUtil;
@@ -10,7 +11,9 @@ import com.datorama.oss.timbermill.common.persistence.PersistenceHandler;
 import com.datorama.oss.timbermill.common.persistence.PersistenceHandlerUtil;
 import com.datorama.oss.timbermill.common.redis.RedisService;
 import com.datorama.oss.timbermill.cron.CronsRunner;
+import com.datorama.oss.timbermill.pipe.EnvFairEventsQueue;
 import com.datorama.oss.timbermill.pipe.LocalOutputPipe;
+import com.datorama.oss.timbermill.pipe.PrioritizedEventsQueue;
 import com.datorama.oss.timbermill.unit.Event;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -24,6 +27,7 @@ import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
 
 @Service
 public class TimbermillService {
@@ -32,6 +36,8 @@ public class TimbermillService {
 
 	private TaskIndexer taskIndexer;
 	private BlockingQueue<Event> eventsQueue;
+	private EnvFairEventsQueue envFairEventsQueue;
+	private boolean envRejectOverQuota;
 	private BlockingQueue<Event> overflowedQueue;
 
 	private boolean keepRunning = true;
@@ -59,11 +65,29 @@ public class TimbermillService {
 							 @Value("${TIMBERMILL_VERSION:}") String timbermillVersion,
 							 @Value("${TERMINATION_TIMEOUT_SECONDS:60}") int terminationTimeoutSeconds,
 							 @Value("${PLUGINS_JSON:[]}") String pluginsJson,
+							 @Value("${PLUGINS_PARALLELISM:4}") int pluginsParallelism,
+							 @Value("${PLUGIN_TIME_BUDGET_MILLIS:5000}") long pluginTimeBudgetMillis,
+							 @Value("${ROLLUP_TASK_NAMES:}") String rollupTaskNames,
+							 @Value("${ROLLUP_WINDOW_SECONDS:60}") long rollupWindowSeconds,
+							 @Value("${ROLLUP_SAMPLE_RATE:0}") int rollupSampleRate,
+							 @Value("${MAX_CHILDREN_PER_PARENT:0}") int maxChildrenPerParent,
+							 @Value("${DUPLICATE_START_CHECK_SAMPLE_RATE:0}") int duplicateStartCheckSampleRate,
+							 @Value("${DEFERRED_PARENTS_RESOLUTION:false}") boolean deferredParentsResolution,
+							 @Value("${MISSING_PARENTS_CACHE_TTL_SECONDS:0}") long missingParentsCacheTtlSeconds,
+							 @Value("${PRIORITY_LANES:false}") boolean priorityLanes,
+							 @Value("${HIGH_PRIORITY_TASK_NAMES:}") String highPriorityTaskNames,
+							 @Value("${LOW_PRIORITY_TASK_NAMES:}") String lowPriorityTaskNames,
+							 @Value("${ENV_FAIR_QUEUE:false}") boolean envFairQueue,
+							 @Value("${ENV_WEIGHTS:}") String envWeights,
+							 @Value("${ENV_MAX_QUEUED_EVENTS:0}") long envMaxQueuedEvents,
+							 @Value("${ENV_MAX_QUEUED_BYTES:0}") long envMaxQueuedBytes,
+							 @Value("${ENV_REJECT_OVER_QUOTA:false}") boolean envRejectOverQuota,
 							 @Value("${EVENT_QUEUE_CAPACITY:10000000}") int eventsQueueCapacity,
 							 @Value("${OVERFLOWED_QUEUE_CAPACITY:10000000}") int overFlowedQueueCapacity,
 							 @Value("${MAX_BULK_INDEX_FETCHES:3}") int maxBulkIndexFetches,
 							 @Value("${MERGING_CRON_EXPRESSION:0 0/10 * 1/1 * ? *}") String mergingCronExp,
 							 @Value("${DELETION_CRON_EXPRESSION:0 0 12 1/1 * ? *}") String deletionCronExp,
+							 @Value("${ROLLOVER_CRON_EXPRESSION:0 0/1 * 1/1 * ? *}") String rolloverCronExp,
 							 @Value("${DELETION_CRON_MAX_INDICES_IN_PARALLEL:1}") int expiredMaxIndicesToDeleteInParallel,
 							 @Value("${PERSISTENCE_STRATEGY:sqlite}") String persistenceStrategy,
 							 @Value("${BULK_PERSISTENT_FETCH_CRON_EXPRESSION:0 0/10 * 1/1 * ? *}") String bulkPersistentFetchCronExp,
@@ -79,6 +103,7 @@ public class TimbermillService {
 							 @Value("${MAXIMUM_ORPHANS_CACHE_WEIGHT:1000000000}") long maximumOrphansCacheWeight,
 							 @Value("${CACHE_STRATEGY:}") String cacheStrategy,
 							 @Value("${CACHE_TTL_IN_SECONDS:604800}") int cacheRedisTtlInSeconds,
+							 @Value("${CACHE_LOCK_STRIPES:1}") int cacheLockStripes,
 							 @Value("${REDIS_MAX_MEMORY:}") String redisMaxMemory,
 							 @Value("${REDIS_MAX_MEMORY_POLICY:}") String redisMaxMemoryPolicy,
 							 @Value("${REDIS_HOST:}") String redisHost,
@@ -92,7 +117,16 @@ public class TimbermillService {
 							 @Value("${REDIS_MAX_TRIED:3}") int redisMaxTries,
 							 @Value("${FETCH_BY_IDS_PARTITIONS:10000}") int fetchByIdsPartitions){
 
-		eventsQueue = new LinkedBlockingQueue<>(eventsQueueCapacity);
+		Supplier<BlockingQueue<Event>> eventsQueueSupplier = priorityLanes ?
+				() -> PrioritizedEventsQueue.fromConfig(eventsQueueCapacity, highPriorityTaskNames, lowPriorityTaskNames) : () -> new LinkedBlockingQueue<>(eventsQueueCapacity);
+		if (envFairQueue) {
+			envFairEventsQueue = new EnvFairEventsQueue(eventsQueueCapacity, envMaxQueuedEvents, envMaxQueuedBytes, EnvFairEventsQueue.parseWeights(envWeights), eventsQueueSupplier);
+			eventsQueue = envFairEventsQueue;
+		}
+		else {
+			eventsQueue = eventsQueueSupplier.get();
+		}
+		this.envRejectOverQuota = envRejectOverQuota;
 		overflowedQueue = new LinkedBlockingQueue<>(overFlowedQueueCapacity);
 		terminationTimeout = terminationTimeoutSeconds * 1000;
 
@@ -109,11 +143,13 @@ public class TimbermillService {
 				elasticPassword, maxIndexAge, maxIndexSizeInGB, maxIndexDocs, numOfElasticSearchActionsTries, maxBulkIndexFetches, searchMaxSize, persistenceHandler, numberOfShards, numberOfReplicas,
 				maxTotalFields, null, scrollLimitation, scrollTimeoutSeconds, fetchByIdsPartitions, expiredMaxIndicesToDeleteInParallel);
 
-		CacheConfig cacheParams = new CacheConfig(redisService, cacheRedisTtlInSeconds, maximumTasksCacheWeight, maximumOrphansCacheWeight);
+		CacheConfig cacheParams = new CacheConfig(redisService, cacheRedisTtlInSeconds, maximumTasksCacheWeight, maximumOrphansCacheWeight, cacheLockStripes);
 		AbstractCacheHandler cacheHandler = CacheHandlerUtil.getCacheHandler(cacheStrategy, cacheParams);
-		taskIndexer = new TaskIndexer(pluginsJson, daysRotation, es, timbermillVersion, cacheHandler);
+		taskIndexer = new TaskIndexer(pluginsJson, daysRotation, es, timbermillVersion, cacheHandler, pluginsParallelism, pluginTimeBudgetMillis,
+				rollupTaskNames, rollupWindowSeconds, rollupSampleRate, maxChildrenPerParent,
+				duplicateStartCheckSampleRate, deferredParentsResolution, missingParentsCacheTtlSeconds);
 		cronsRunner.runCrons(bulkPersistentFetchCronExp, eventsPersistentFetchCronExp, persistenceHandler, es, deletionCronExp,
-				eventsQueue, overflowedQueue, mergingCronExp, redisService);
+				eventsQueue, overflowedQueue, mergingCronExp, redisService, rolloverCronExp, taskIndexer);
 		startQueueSpillerThread();
 		startWorkingThread();
 	}
@@ -172,6 +208,13 @@ public class TimbermillService {
 
 	void handleEvents(Collection<Event> events){
 		for (Event event : events) {
+			if (!taskIndexer.prepareEvent(event)) {
+				continue;
+			}
+			if (envRejectOverQuota && envFairEventsQueue != null && envFairEventsQueue.isOverQuota(event)) {
+				KamonConstants.EVENTS_REJECTED_BY_ENV_QUOTA_COUNTER.withTag("env", event.getEnv()).increment();
+				continue;
+			}
 			LocalOutputPipe.pushEventToQueues(persistenceHandler, eventsQueue, overflowedQueue, event);
 		}
 	}
@@ -5,6 +5,7 @@ import com.datorama.oss.timbermill.common.persistence.IndexRetryManager;
 import com.datorama.oss.timbermill.common.persistence.PersistenceHandler;
 import com.datorama.oss.timbermill.pipe.LocalOutputPipe;
 import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.junit.*;
 import org.junit.runner.RunWith;
@@ -132,6 +133,18 @@ public class TimberLogLocalPersistenceTest extends TimberLogTest {
 			return (BulkResponse) invocation.callRealMethod();
 		};
 		doAnswer(bulkResponseAnswer).when(bulkerMock).bulk(any());
+		Answer<Void> bulkAsyncAnswer = invocation -> {
+			Object[] args = invocation.getArguments();
+			DbBulkRequest dbBulkRequest = (DbBulkRequest) args[0];
+			if (dbBulkRequest.getTimesFetched() < 1) {
+				((ActionListener<?>) args[1]).onFailure(new RuntimeException());
+				return null;
+			}
+			// call real method
+			invocation.callRealMethod();
+			return null;
+		};
+		doAnswer(bulkAsyncAnswer).when(bulkerMock).bulkAsync(any(), any());
 		builder.bulker(bulkerMock);
 		builder.deletionCronExp("").eventsPersistentFetchCronExp("");
 		return builder.build();
@@ -1,3 +1,4 @@
+import gzip
 import json
 import queue as Queue
 
@@ -14,6 +15,8 @@ class MockRest:
         self.events = dict()
 
     def post(self, url, data, headers, **kwargs):
+        if headers.get('Content-Encoding') == 'gzip':
+            data = gzip.decompress(data)
         for event_dict in json.loads(data)['events']:
             key = event_dict['@type']
             val = json.dumps(event_dict)
@@ -97,6 +97,17 @@ class TestTimberlog(unittest.TestCase):
         except:
             self.fail('Plus days datetime format is invalid..')
 
+    def test_events_buffer_drops_events_when_full(self):
+        events_buffer = timberlog_event_handler.EventsBuffer(max_size_in_bytes=10, batch_size_in_bytes=6)
+        self.assertTrue(events_buffer.offer(b'12345'))
+        self.assertTrue(events_buffer.offer(b'12345'))
+        self.assertFalse(events_buffer.offer(b'1'))
+        self.assertEqual(1, events_buffer.pop_dropped_events())
+        self.assertEqual(0, events_buffer.pop_dropped_events())
+
+        self.assertEqual([b'12345', b'12345'], events_buffer.poll_batch())
+        self.assertEqual([], events_buffer.poll_batch())
+
     def check_event_type(self, event_type):
         event_task_json = timberlog_event_handler.rest_client.get_request(event_type)
         event_task = json.loads(event_task_json)
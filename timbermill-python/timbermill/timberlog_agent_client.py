@@ -0,0 +1,43 @@
+import socket
+import struct
+import threading
+
+DEFAULT_AGENT_PORT = 8485
+CONNECT_TIMEOUT_SECONDS = 1
+
+
+class AgentResponse:
+    def __init__(self, ok: bool, reason: str = None):
+        self.ok = ok
+        self.reason = reason
+
+
+class AgentClient:
+    """Writes events to the Timbermill agent on the local host, each request body is written as a length prefixed frame."""
+
+    def __init__(self, port: int = DEFAULT_AGENT_PORT):
+        self.address = ('127.0.0.1', port)
+        self.sock = None
+        self.lock = threading.Lock()
+
+    def post(self, url, data, headers=None, **kwargs):
+        frame = struct.pack('>I', len(data)) + data
+        with self.lock:
+            for try_num in range(2):  # A broken connection is re-established once
+                try:
+                    if self.sock is None:
+                        self.sock = socket.create_connection(self.address, timeout=CONNECT_TIMEOUT_SECONDS)
+                    self.sock.sendall(frame)
+                    return AgentResponse(True)
+                except OSError as e:
+                    self.close()
+                    reason = str(e)
+        return AgentResponse(False, f'Timbermill agent at {self.address} is unavailable: {reason}')
+
+    def close(self):
+        if self.sock is not None:
+            try:
+                self.sock.close()
+            except OSError:
+                pass
+            self.sock = None
@@ -1,15 +1,17 @@
+import atexit
+import gzip
 import json
 import logging
 import os
 import socket
-import sys
 import threading
-import time
+from collections import deque
 from datetime import datetime, timedelta
-from queue import Queue
 
 import requests
+from requests.adapters import HTTPAdapter
 
+from timbermill.timberlog_agent_client import AgentClient
 from timbermill.timberlog_mock import RestClientBlackHole
 import timbermill.timberlog_consts as consts
 
@@ -17,18 +19,67 @@ LOG = logging
 
 SEND_EVENTS_SIZE_THRESHOLD_IN_MB = 1
 SEND_EVENTS_SECONDS_TIMEOUT = int(os.getenv('TIMBERMILL_EVENT_SEND_INTERVAL', 0))  # 0 means sending events synchronously
+MAX_BUFFER_SIZE_IN_MB = int(os.getenv('TIMBERMILL_MAX_BUFFER_SIZE_MB', 50))
+SEND_GZIPPED_REQUEST = os.getenv('TIMBERMILL_SEND_GZIPPED_REQUEST', 'true').lower() == 'true'
 TIMBERMILL_ENABLED = os.getenv('TIMBERMILL_LOG_ENABLED', 'true').lower() == 'true'
+TIMBERMILL_AGENT_PORT = int(os.getenv('TIMBERMILL_AGENT_PORT', 0))  # 0 means sending events directly to the server
+HTTP_TIMEOUT_SECONDS = 2
 TIMBERMILL_URL = None
 ENV = None
 STATIC_EVENT_PARAMS = {}
 
 rest_client = None
 
-events_queue = None
+events_buffer = None
 event_collection_thread = None
+initialized_pid = None
 
 submit_event = lambda event: LOG.warning('Trying to submit a timbermill event without it being initiated, ignoring..')
-drain_events_from_queue = None
+
+
+class EventsBuffer:
+    """Holds serialized events up to a maximum amount of bytes, events that don't fit are dropped and counted."""
+
+    def __init__(self, max_size_in_bytes: int, batch_size_in_bytes: int):
+        self.max_size_in_bytes = max_size_in_bytes
+        self.batch_size_in_bytes = batch_size_in_bytes
+        self.size_in_bytes = 0
+        self.dropped_events = 0
+        self.events = deque()
+        self.condition = threading.Condition()
+
+    def offer(self, serialized_event: bytes) -> bool:
+        with self.condition:
+            if self.size_in_bytes + len(serialized_event) > self.max_size_in_bytes:
+                self.dropped_events += 1
+                return False
+            self.events.append(serialized_event)
+            self.size_in_bytes += len(serialized_event)
+            if self.size_in_bytes >= self.batch_size_in_bytes:
+                self.condition.notify()
+            return True
+
+    def wait_for_batch(self, timeout: float):
+        with self.condition:
+            if self.size_in_bytes < self.batch_size_in_bytes:
+                self.condition.wait(timeout)
+
+    def poll_batch(self) -> list:
+        batch = []
+        batch_size = 0
+        with self.condition:
+            while self.events and batch_size < self.batch_size_in_bytes:
+                serialized_event = self.events.popleft()
+                self.size_in_bytes -= len(serialized_event)
+                batch_size += len(serialized_event)
+                batch.append(serialized_event)
+        return batch
+
+    def pop_dropped_events(self) -> int:
+        with self.condition:
+            dropped_events = self.dropped_events
+            self.dropped_events = 0
+            return dropped_events
 
 
 def init(timbermill_hostname: str, env: str = None, static_event_params=None, logger=None):
@@ -52,14 +103,18 @@ def init(timbermill_hostname: str, env: str = None, static_event_params=None, lo
 def init_timbermill():
     global rest_client
     global submit_event
-    global drain_events_from_queue
-    global events_queue
+    global events_buffer
+    global initialized_pid
 
     LOG.info(f'Initializing timbermill for process {os.getpid()}')
-
-    events_queue = Queue()
-    if TIMBERMILL_ENABLED:
-        rest_client = requests
+    initialized_pid = os.getpid()
+
+    events_buffer = EventsBuffer(MAX_BUFFER_SIZE_IN_MB * 1000000, SEND_EVENTS_SIZE_THRESHOLD_IN_MB * 1000000)
+    if TIMBERMILL_ENABLED and TIMBERMILL_AGENT_PORT > 0:
+        LOG.info(f'Going to send timbermill events through the local agent on port {TIMBERMILL_AGENT_PORT}')
+        rest_client = AgentClient(TIMBERMILL_AGENT_PORT)
+    elif TIMBERMILL_ENABLED:
+        rest_client = __create_session()
     else:
         rest_client = RestClientBlackHole()
 
@@ -72,6 +127,35 @@ def init_timbermill():
         submit_event = __submit_event_sync
 
 
+def flush():
+    """Sends all buffered events, called on interpreter exit."""
+    if events_buffer is None or initialized_pid != os.getpid():
+        return
+    batch = events_buffer.poll_batch()
+    while batch:
+        __submit_events_to_timbermill(batch)
+        batch = events_buffer.poll_batch()
+
+
+def __create_session() -> requests.Session:
+    session = requests.Session()
+    adapter = HTTPAdapter(pool_connections=1, pool_maxsize=4)
+    session.mount('http://', adapter)
+    session.mount('https://', adapter)
+    return session
+
+
+def __reinit_after_fork():
+    # The sending thread, buffer lock and pooled connections belong to the parent process
+    if TIMBERMILL_URL is not None:
+        init_timbermill()
+
+
+if hasattr(os, 'register_at_fork'):
+    os.register_at_fork(after_in_child=__reinit_after_fork)
+atexit.register(flush)
+
+
 def create_event(event_type: str, text: dict, name: str = None, task_id: str = None, context: dict = None, strings: dict = None, metrics: dict = None, parent_id: str = None, retention_days: int = None,
                  event_time: str = None, status: bool = None) -> dict:
     text = text if text is not None else {}
@@ -125,44 +209,60 @@ def __dict_values_to_str(dictionary: dict) -> dict:
 
 def __start_event_collection_thread():
     global event_collection_thread
-    event_collection_thread = threading.Thread(target=__drain_events_from_queue_async)
-    event_collection_thread.setDaemon(True)
+    event_collection_thread = threading.Thread(target=__drain_events_from_queue_async, name='timbermill-sender')
+    event_collection_thread.daemon = True
     event_collection_thread.start()
     LOG.info('timbermill thread started')
 
 
 def __drain_events_from_queue_async():
-    while True:
-        time.sleep(SEND_EVENTS_SECONDS_TIMEOUT)
-        events_to_send = []
-
-        while not events_queue.empty():
-            event = events_queue.get()
-            events_to_send.append(event)
-            events_to_send_in_mb = sys.getsizeof(events_to_send) / 1000000
-            if events_to_send_in_mb > SEND_EVENTS_SIZE_THRESHOLD_IN_MB:  # send events in chunks
-                __submit_events_to_timbermill(events_to_send)
-                events_to_send = []
-
-        if events_to_send:  # send the remainder
-            __submit_events_to_timbermill(events_to_send)
+    buffer = events_buffer
+    while buffer is events_buffer:  # A new buffer means timbermill was re-initialized
+        try:
+            buffer.wait_for_batch(SEND_EVENTS_SECONDS_TIMEOUT)
+            batch = buffer.poll_batch()
+            while batch:  # send events in chunks
+                __submit_events_to_timbermill(batch)
+                batch = buffer.poll_batch()
+
+            dropped_events = buffer.pop_dropped_events()
+            if dropped_events:
+                LOG.warning(f'{dropped_events} timbermill events were dropped due to insufficient buffer space')
+        except Exception:
+            LOG.warning('Failed while draining timbermill events', exc_info=True)
 
 
 def __submit_event_async(event: dict):
-    events_queue.put(event)
+    __check_forked_process()
+    events_buffer.offer(__serialize_event(event))
 
 
 def __submit_event_sync(event: dict):
-    __submit_events_to_timbermill([event])
+    __check_forked_process()
+    __submit_events_to_timbermill([__serialize_event(event)])
+
+
+def __check_forked_process():
+    # Fallback for interpreters without os.register_at_fork
+    if initialized_pid != os.getpid():
+        init_timbermill()
+
+
+def __serialize_event(event: dict) -> bytes:
+    return json.dumps(event).encode('utf-8')
 
 
-def __submit_events_to_timbermill(events: list):
+def __submit_events_to_timbermill(serialized_events: list):
     global TIMBERMILL_URL
 
     try:
-        events_to_send = {'@type': 'EventsWrapper', 'events': events}
-        res = rest_client.post(TIMBERMILL_URL, data=json.dumps(events_to_send), headers={'content-type': 'application/json'}, timeout=2)
+        data = b'{"@type": "EventsWrapper", "events": [' + b', '.join(serialized_events) + b']}'
+        headers = {'content-type': 'application/json'}
+        if SEND_GZIPPED_REQUEST and TIMBERMILL_AGENT_PORT == 0:  # No point compressing over loopback
+            data = gzip.compress(data)
+            headers['Content-Encoding'] = 'gzip'
+        res = rest_client.post(TIMBERMILL_URL, data=data, headers=headers, timeout=HTTP_TIMEOUT_SECONDS)
         if not res.ok:
             LOG.warning(f'Problem while sending to timbermill: {res.reason}')
-    except Exception as e:
-        LOG.warning(f'Failed while sending to timbermill, message was: {json.dumps(events_to_send)}', exc_info=True)
+    except Exception:
+        LOG.warning(f'Failed while sending {len(serialized_events)} events to timbermill', exc_info=True)